@@ -4,9 +4,12 @@ from pathlib import Path
 from typing import Dict
 
 
-def define_type(base_name, name, fields: Dict):
-    field_decls = '\n\t\t'.join(f'final {typ} {name};'
-                                for name, typ in fields.items())
+def define_type(base_name, name, fields: Dict, caches: Dict):
+    # caches are left out of the constructor and filled in while running
+    field_decls = '\n\t\t'.join([f'final {typ} {name};'
+                                 for name, typ in fields.items()] +
+                                [f'{typ} {name};'
+                                 for name, typ in caches.items()])
     constr_args = ', '.join(f'{typ} {name}'
                             for name, typ in fields.items())
     constr_body = '\n\t\t\t'.join(f'this.{name} = {name};'
@@ -35,9 +38,9 @@ def define_visitor(base_name, types: Dict):
 \t}}
 '''
 
-def define_ast(output_dir, base_name, types: Dict):
+def define_ast(output_dir, base_name, types: Dict, caches: Dict = {}):
     with open(output_dir/f'{base_name}.java', encoding='utf-8', mode='w') as f:
-        ast_classes = ''.join(define_type(base_name, type_name, fields)
+        ast_classes = ''.join(define_type(base_name, type_name, fields, caches.get(type_name, {}))
                               for type_name, fields in types.items())
         visitor = define_visitor(base_name, types)
         f.write(f'''\
@@ -66,19 +69,40 @@ def main():
         'Call': {'callee': 'Expr', 'paren': 'Token', 'arguments': 'List<Expr>'},
         'Get': {'object': 'Expr', 'name': 'Token'},
         'Set': {'object': 'Expr', 'name': 'Token', 'value': 'Expr'},
+        'Index': {'object': 'Expr', 'bracket': 'Token', 'index': 'Expr'},
+        'SetIndex': {'object': 'Expr', 'bracket': 'Token', 'index': 'Expr', 'value': 'Expr'},
         'This': {'keyword': 'Token'},
         'Super': {'keyword': 'Token', 'method': 'Token'},
+        'Slot': {'name': 'Token', 'index': 'int'},
+    }, {
+        'Binary': {'numeric': 'boolean'},
+        'Unary': {'numeric': 'boolean'},
+        'Variable': {'global': 'Environment.Global'},
+        'Assign': {'global': 'Environment.Global', 'guard': 'TypeChecker.Type'},
+        'Call': {'inline': 'Inliner.Inline'},
+        'Get': {'field': 'LoxDataClass.Field'},
     })
     define_ast(output_dir, 'Stmt', {
         'Block': {'statements': 'List<Stmt>'},
         'Expression': {'expression': 'Expr'},
         'Print': {'expression': 'Expr'},
-        'Var': {'name': 'Token', 'initializer': 'Expr'},
+        'Var': {'name': 'Token', 'type': 'Token', 'initializer': 'Expr'},
         'If': {'condition': 'Expr', 'thenBranch': 'Stmt', 'elseBranch': 'Stmt'},
         'While': {'condition': 'Expr', 'body': 'Stmt'},
-        'Function': {'name': 'Token', 'params': 'List<Token>', 'body': 'List<Stmt>'},
+        'Counted': {'name': 'Token', 'type': 'Token', 'start': 'Expr', 'operator': 'Token', 'end': 'Expr', 'step': 'Expr',
+                    'body': 'Stmt', 'condition': 'Expr', 'increment': 'Expr'},
+        'Function': {'name': 'Token', 'params': 'List<Token>', 'types': 'List<Token>', 'returnType': 'Token',
+                     'body': 'List<Stmt>'},
         'Return': {'keyword': 'Token' , 'value': 'Expr'},
         'Class': {'name': 'Token', 'super_': 'Expr.Variable', 'methods': 'List<Stmt.Function>'},
+        'Import': {'keyword': 'Token', 'path': 'Token', 'name': 'Token'},
+        'Yield': {'keyword': 'Token', 'value': 'Expr'},
+        'Each': {'name': 'Token', 'keyword': 'Token', 'iterable': 'Expr', 'body': 'Stmt'},
+        'Data': {'name': 'Token', 'fields': 'List<Token>'},
+    }, {
+        'Var': {'guard': 'TypeChecker.Type'},
+        'Counted': {'guard': 'TypeChecker.Type'},
+        'Function': {'paramTypes': 'TypeChecker.Type[]', 'returns': 'TypeChecker.Type'},
     })
 
 if __name__ == '__main__':
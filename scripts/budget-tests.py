@@ -0,0 +1,148 @@
+#!/usr/bin/python3
+# runs the scripts in tests/budget under the limits below, and checks that
+# each stops when and how it should; run from the repository root. The
+# daemon cases run them through `jlox --daemon`, where each request has a
+# budget of its own and is cancelled when its client goes away. JLOX
+# overrides the command that runs jlox.
+
+import os
+import resource
+import shlex
+import subprocess
+import sys
+import tempfile
+import time
+
+# script, options, a line it should print on stderr (None for nothing), exit
+# status and the most seconds it may take
+CASES = [
+    ('count.lox', ['--fuel=100000', '--timeout=10', '--allocations=100'], None, 0, 10),
+    ('spin.lox', ['--fuel=1000000'], 'Script ran out of fuel.', 70, 10),
+    ('spin.lox', ['--timeout=1'], 'Script ran out of time.', 70, 5),
+    ('allocate.lox', ['--allocations=1000'], 'Script ran out of allocations.', 70, 10),
+    # the event loop waits no longer than the deadline
+    ('wait.lox', ['--timeout=1'], 'Script ran out of time.', 70, 5),
+    ('interval.lox', ['--timeout=1'], 'Script ran out of time.', 70, 5),
+    # parallel workers run under the caller's budget
+    ('parallel.lox', ['--timeout=1'], 'Script ran out of time.', 70, 5),
+    ('parallel.lox', ['--fuel=1000000'], 'Script ran out of fuel.', 70, 10),
+    # and draw their allocations from it rather than each having as many
+    ('parallelAllocate.lox', ['--allocations=1000'], 'Script ran out of allocations.', 70, 10),
+    ('parallelAllocate.lox', ['--allocations=3000'], None, 0, 10),
+    # and so do actors
+    ('actor.lox', ['--timeout=1'], 'Script ran out of time.', 70, 5),
+    ('actor.lox', ['--fuel=1000000'], 'Actor spin failed: Script ran out of fuel.', 70, 10),
+]
+
+
+def jlox():
+    return shlex.split(os.environ.get('JLOX') or 'java -jar bin/jlox.jar')
+
+
+def check(name, command, expected, status, seconds, env=None, files=None):
+    start = time.monotonic()
+    # at most this many open files, for catching leaked descriptors
+    limit = None if files is None else lambda: resource.setrlimit(resource.RLIMIT_NOFILE, (files, files))
+    try:
+        run = subprocess.run(command, env=env, capture_output=True, timeout=60, preexec_fn=limit)
+    except subprocess.TimeoutExpired:
+        print(f'FAIL {name}\n  still running after 60s')
+        return False
+    took = time.monotonic() - start
+    errors = run.stderr.decode('utf-8').splitlines()
+    failures = []
+    if errors if expected is None else expected not in errors:
+        failures.append(f'  expected {expected!r} on stderr, got {errors!r}')
+    if run.returncode != status:
+        failures.append(f'  expected exit status {status}, got {run.returncode}')
+    if took > seconds:
+        failures.append(f'  took {took:.1f}s, more than {seconds}s')
+    print(('FAIL ' if failures else 'ok   ') + name)
+    for failure in failures:
+        print(failure)
+    return not failures
+
+
+def start_daemon(directory, name, options):
+    address = os.path.join(directory, name + '.sock')
+    log = open(os.path.join(directory, name + '.log'), 'w+')
+    daemon = subprocess.Popen(jlox() + ['--daemon'] + options + [address], stdout=log, stderr=log)
+    deadline = time.monotonic() + 30
+    while not os.path.exists(address) and time.monotonic() < deadline:
+        time.sleep(0.05)
+    return daemon, address, log
+
+
+def client(script):
+    return [sys.executable, 'scripts/jlox-client.py', 'tests/budget/' + script]
+
+
+def daemon_cases(directory):
+    passed = True
+    daemon, address, log = start_daemon(directory, 'limited', ['--timeout=1'])
+    env = dict(os.environ, JLOX_SOCKET=address)
+    try:
+        passed &= check('daemon spin.lox --timeout=1', client('spin.lox'), 'Script ran out of time.', 70, 5, env)
+        passed &= check('daemon count.lox --timeout=1', client('count.lox'), None, 0, 5, env)
+    finally:
+        daemon.kill()
+        daemon.wait()
+
+    # scripts waiting for input hold no core, so as many as there are cores
+    # waiting at once keep no one else from running
+    daemon, address, log = start_daemon(directory, 'readers', [])
+    env = dict(os.environ, JLOX_SOCKET=address)
+    readers = [subprocess.Popen(client('read.lox'), env=env, stdin=subprocess.PIPE, stdout=subprocess.PIPE,
+                                stderr=subprocess.DEVNULL) for _ in range(os.cpu_count() or 1)]
+    try:
+        time.sleep(1)
+        passed &= check('daemon count.lox while read.lox waits for input', client('count.lox'), None, 0, 5, env)
+        for reader in readers:
+            output, _ = reader.communicate(b'line\n', timeout=10)
+            if output != b'line\n' or reader.returncode != 0:
+                print(f'FAIL daemon read.lox\n  printed {output!r} with exit status {reader.returncode}')
+                passed = False
+    finally:
+        for reader in readers:
+            reader.kill()
+        daemon.kill()
+        daemon.wait()
+
+    # a client that goes away takes its script with it
+    daemon, address, log = start_daemon(directory, 'unlimited', [])
+    env = dict(os.environ, JLOX_SOCKET=address)
+    try:
+        chatter = subprocess.Popen(client('chatter.lox'), env=env, stdout=subprocess.DEVNULL,
+                                   stderr=subprocess.DEVNULL)
+        time.sleep(1)
+        chatter.kill()
+        chatter.wait()
+        deadline = time.monotonic() + 10
+        cancelled = False
+        while not cancelled and time.monotonic() < deadline:
+            time.sleep(0.1)
+            log.seek(0)
+            cancelled = 'cancelled tests/budget/chatter.lox' in log.read()
+        print(('ok   ' if cancelled else 'FAIL ') + 'daemon cancels chatter.lox when its client goes away')
+        passed &= cancelled
+    finally:
+        daemon.kill()
+        daemon.wait()
+    return passed
+
+
+def main():
+    passed = True
+    for script, options, expected, status, seconds in CASES:
+        command = jlox() + options + ['tests/budget/' + script]
+        passed &= check(' '.join([script] + options), command, expected, status, seconds)
+    # a file looped over is closed when the loop is done with it, so walking
+    # one 3000 times stays well under the descriptor limit
+    passed &= check('files.lox with 256 open files', jlox() + ['tests/budget/files.lox'], None, 0, 30, files=256)
+    with tempfile.TemporaryDirectory() as directory:
+        passed &= daemon_cases(directory)
+    sys.exit(0 if passed else 1)
+
+
+if __name__ == '__main__':
+    main()
@@ -1,4 +1,4 @@
 @echo off
 cd ..
-javac -verbose -d build -cp src src/com/craftinginterpreters/lox/*
+javac -verbose --add-modules jdk.incubator.vector -d build -cp src src/com/craftinginterpreters/lox/*
 jar -c -v -f bin/jlox.jar -e com.craftinginterpreters.lox.Lox -C build .
@@ -0,0 +1,94 @@
+#!/usr/bin/python3
+# replays recorded debugger sessions against `jlox --debug` and checks the
+# replies; run from the repository root, e.g.
+#   python3 scripts/debug-sessions.py [tests/debug/step.session ...]
+# Each session debugs the script of the same name next to it. `>` lines are
+# commands sent to the script, `<` lines the replies expected from it, in
+# order, and `|` lines what the script is expected to print. JLOX overrides
+# the command that runs jlox.
+
+import glob
+import os
+import shlex
+import socket
+import subprocess
+import sys
+import tempfile
+import time
+
+
+def jlox():
+    return shlex.split(os.environ.get('JLOX') or 'java -jar bin/jlox.jar')
+
+
+def load(path):
+    commands = []
+    replies = []
+    printed = []
+    with open(path, encoding='utf-8') as session:
+        for line in session:
+            line = line.rstrip('\n')
+            kind, text = line[:1], line[2:]
+            if kind == '>':
+                commands.append(text)
+            elif kind == '<':
+                replies.append(text)
+            elif kind == '|':
+                printed.append(text)
+    return commands, replies, printed
+
+
+def connect(path, script):
+    # the script binds the socket once it has started
+    deadline = time.monotonic() + 30
+    while True:
+        try:
+            sock = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+            sock.connect(path)
+            return sock
+        except OSError:
+            sock.close()
+            if script.poll() is not None or time.monotonic() > deadline:
+                raise
+            time.sleep(0.05)
+
+
+def replay(path):
+    commands, expected, printed = load(path)
+    with tempfile.TemporaryDirectory() as directory:
+        address = os.path.join(directory, 'debug.sock')
+        script = subprocess.Popen(jlox() + ['--debug=' + address, os.path.splitext(path)[0] + '.lox'],
+                                  stdin=subprocess.DEVNULL, stdout=subprocess.PIPE, stderr=subprocess.DEVNULL)
+        with connect(address, script) as sock:
+            # commands are only read while the script is stopped, so they can
+            # all be sent at once; once they run out the script runs on alone
+            sock.sendall(''.join(command + '\n' for command in commands).encode('utf-8'))
+            sock.shutdown(socket.SHUT_WR)
+            with sock.makefile('r', encoding='utf-8') as lines:
+                replies = [line.rstrip('\n') for line in lines]
+        output = script.communicate(timeout=60)[0].decode('utf-8').splitlines()
+
+    failures = []
+    for kind, want, got in (('reply', expected, replies), ('output', printed, output)):
+        for i in range(max(len(want), len(got))):
+            w = want[i] if i < len(want) else None
+            g = got[i] if i < len(got) else None
+            if w != g:
+                failures.append(f'  {kind} {i + 1}: expected {w!r}, got {g!r}')
+    return failures
+
+
+def main():
+    paths = sys.argv[1:] or sorted(glob.glob('tests/debug/*.session'))
+    failed = 0
+    for path in paths:
+        failures = replay(path)
+        print(('FAIL ' if failures else 'ok   ') + path)
+        for failure in failures:
+            print(failure)
+        failed += bool(failures)
+    sys.exit(1 if failed else 0)
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,73 @@
+#!/usr/bin/python3
+# thin client for `jlox --daemon`: runs a script in the warm daemon and
+# relays its stdout, stderr and exit code
+
+import getpass
+import os
+import socket
+import struct
+import sys
+import threading
+
+
+def socket_path():
+    return os.environ.get('JLOX_SOCKET') or f'/tmp/jlox-{getpass.getuser()}.sock'
+
+
+def send_string(sock, text):
+    data = text.encode('utf-8')
+    sock.sendall(struct.pack('>i', len(data)) + data)
+
+
+def pump_stdin(sock):
+    try:
+        while True:
+            chunk = os.read(sys.stdin.fileno(), 65536)
+            sock.sendall(struct.pack('>i', len(chunk)) + chunk)
+            if not chunk:
+                break
+    except OSError:
+        # the script finished without reading all of its input
+        pass
+
+
+def read_exactly(sock, size):
+    data = b''
+    while len(data) < size:
+        chunk = sock.recv(size - len(data))
+        if not chunk:
+            raise EOFError('daemon closed the connection')
+        data += chunk
+    return data
+
+
+def main():
+    if len(sys.argv) < 2:
+        print('Usage: jlox-client.py script [args...]', file=sys.stderr)
+        sys.exit(64)
+
+    sock = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+    sock.connect(socket_path())
+
+    # relative paths are taken from here, not from where the daemon runs
+    send_string(sock, os.getcwd())
+    send_string(sock, sys.argv[1])
+    sock.sendall(struct.pack('>i', len(sys.argv) - 2))
+    for arg in sys.argv[2:]:
+        send_string(sock, arg)
+
+    threading.Thread(target=pump_stdin, args=(sock,), daemon=True).start()
+
+    streams = {b'O': sys.stdout.buffer, b'E': sys.stderr.buffer}
+    while True:
+        tag = read_exactly(sock, 1)
+        (value,) = struct.unpack('>i', read_exactly(sock, 4))
+        if tag == b'X':
+            sys.exit(value)
+        stream = streams[tag]
+        stream.write(read_exactly(sock, value))
+        stream.flush()
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,39 @@
+#!/usr/bin/python3
+# line-mode client for `jlox --debug script`: prints what the script reports
+# and sends each command typed (break, clear, stack, locals, print, continue,
+# step, next, finish)
+
+import getpass
+import os
+import socket
+import sys
+import threading
+
+
+def socket_path():
+    if len(sys.argv) > 1:
+        return sys.argv[1]
+    return os.environ.get('JLOX_DEBUG_SOCKET') or f'/tmp/jlox-debug-{getpass.getuser()}.sock'
+
+
+def relay(sock):
+    with sock.makefile('r', encoding='utf-8') as replies:
+        for line in replies:
+            print(line, end='', flush=True)
+    # the script is done
+    os._exit(0)
+
+
+def main():
+    sock = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+    sock.connect(socket_path())
+    threading.Thread(target=relay, args=(sock,), daemon=True).start()
+
+    for command in sys.stdin:
+        sock.sendall(command.encode('utf-8'))
+    sock.shutdown(socket.SHUT_WR)
+    threading.Event().wait()
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,77 @@
+#!/usr/bin/python3
+# replays recorded language server sessions against `jlox --lsp` and checks
+# what it sends back; run from the repository root, e.g.
+#   python3 scripts/lsp-sessions.py [tests/lsp/edit.session ...]
+# A session has one JSON message per line: `>` lines are sent to the server
+# and `<` lines are the messages expected from it, in order. JLOX overrides
+# the command that runs jlox.
+
+import glob
+import json
+import os
+import shlex
+import subprocess
+import sys
+
+
+def jlox():
+    return shlex.split(os.environ.get('JLOX') or 'java -jar bin/jlox.jar')
+
+
+def load(path):
+    sent = []
+    expected = []
+    with open(path, encoding='utf-8') as session:
+        for line in session:
+            if line.startswith('>'):
+                sent.append(json.loads(line[1:]))
+            elif line.startswith('<'):
+                expected.append(json.loads(line[1:]))
+    return sent, expected
+
+
+def frame(message):
+    content = json.dumps(message).encode('utf-8')
+    return b'Content-Length: %d\r\n\r\n' % len(content) + content
+
+
+def unframe(output):
+    messages = []
+    while output:
+        header, _, rest = output.partition(b'\r\n\r\n')
+        length = int(header.split(b':')[1])
+        messages.append(json.loads(rest[:length]))
+        output = rest[length:]
+    return messages
+
+
+def replay(path):
+    sent, expected = load(path)
+    server = subprocess.run(jlox() + ['--lsp'], input=b''.join(frame(m) for m in sent),
+                            capture_output=True, timeout=60)
+    received = unframe(server.stdout)
+    failures = []
+    for i in range(max(len(expected), len(received))):
+        want = expected[i] if i < len(expected) else None
+        got = received[i] if i < len(received) else None
+        if want != got:
+            failures.append(f'  message {i + 1}:\n    expected {json.dumps(want)}\n    got      {json.dumps(got)}')
+    if server.returncode != 0:
+        failures.append(f'  exit status {server.returncode}: {server.stderr.decode("utf-8", "replace")}')
+    return failures
+
+
+def main():
+    paths = sys.argv[1:] or sorted(glob.glob('tests/lsp/*.session'))
+    failed = 0
+    for path in paths:
+        failures = replay(path)
+        print(('FAIL ' if failures else 'ok   ') + path)
+        for failure in failures:
+            print(failure)
+        failed += bool(failures)
+    sys.exit(1 if failed else 0)
+
+
+if __name__ == '__main__':
+    main()
@@ -1,2 +1,2 @@
 @echo off
-java -jar ..\bin\jlox.jar %1
+java -jar ..\bin\jlox.jar %*
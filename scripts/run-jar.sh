@@ -1,2 +1,2 @@
 #!/bin/bash
-java -jar ../bin/jlox.jar $1
+java -jar ../bin/jlox.jar "$@"
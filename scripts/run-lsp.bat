@@ -0,0 +1,2 @@
+@echo off
+java -jar ..\bin\jlox.jar --lsp
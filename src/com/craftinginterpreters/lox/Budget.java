@@ -0,0 +1,172 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Limits on how much a script may do: ticks of fuel (one per loop iteration
+// and per call), a wall-clock deadline and a number of allocations, and a
+// flag to cancel it from another thread. The interpreter counts ticks and
+// allocations down by itself and only comes here once per slice of SLICE
+// ticks or ALLOCATION_SLICE allocations, so checks cost nothing between
+// slices. A scheduler can hand out the CPU there too.
+// Actors and parallel workers run under budgets of their own that draw on
+// the script's, so they stop with it but can also be stopped alone.
+class Budget {
+	static final long SLICE = 1 << 14;
+	// small, since a worker may stop holding part of one
+	static final long ALLOCATION_SLICE = 1 << 8;
+
+	// Thrown where the script is when it goes over its budget. The
+	// interpreter stops the script and reports the reason.
+	static class Exceeded extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Exceeded(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	// the budget fuel and time come from, or null for a script's own
+	private final Budget parent;
+	private long fuel;
+	private final long timeout;
+	// set when the script starts running, so compiling it takes none of it
+	private long deadline = 0;
+	private long allocations;
+	private volatile boolean cancelled = false;
+	// run between slices, by a scheduler that shares cores among scripts,
+	// and around the event loop's waits and reads that may block, so a
+	// waiting script holds no core
+	private Runnable between = null;
+	private Runnable idle = null;
+	private Runnable busy = null;
+	// called when the script is cancelled, to wake the event loops waiting
+	private final List<Runnable> wakes = new CopyOnWriteArrayList<>();
+
+	// no limits, but still cancellable
+	Budget() {
+		this(Long.MAX_VALUE, 0, Long.MAX_VALUE);
+	}
+
+	// timeoutNanos of 0 means no deadline
+	Budget(long fuel, long timeoutNanos, long allocations) {
+		this.parent = null;
+		this.fuel = fuel;
+		this.timeout = timeoutNanos;
+		this.allocations = allocations;
+	}
+
+	// for an actor or a parallel worker of a script running under parent
+	Budget(Budget parent) {
+		this.parent = parent;
+		this.fuel = 0;
+		this.timeout = 0;
+		this.allocations = 0;
+	}
+
+	// starts the clock, the first time the script runs
+	void start() {
+		if (this.parent != null)
+			this.parent.start();
+		else if (this.timeout > 0 && this.deadline == 0)
+			this.deadline = System.nanoTime() + this.timeout;
+	}
+
+	void cancel() {
+		this.cancelled = true;
+		for (var wake : this.wakes) {
+			wake.run();
+		}
+	}
+
+	boolean cancelled() {
+		return this.cancelled;
+	}
+
+	void between(Runnable between) {
+		this.between = between;
+	}
+
+	void idle(Runnable idle, Runnable busy) {
+		this.idle = idle;
+		this.busy = busy;
+	}
+
+	void wake(Runnable wake) {
+		this.wakes.add(wake);
+		if (this.parent != null)
+			this.parent.wake(wake);
+	}
+
+	// the ticks an interpreter may run before checking back, once the ones
+	// granted last time are used up; the parallel workers of a script each
+	// draw slices of their own
+	long grant() {
+		this.check();
+		var slice = this.take();
+		if (this.between != null)
+			this.between.run();
+		return slice;
+	}
+
+	private synchronized long take() {
+		if (this.parent != null)
+			return this.parent.take();
+		if (this.fuel <= 0)
+			throw new Exceeded("Script ran out of fuel.");
+		var slice = Math.min(SLICE, this.fuel);
+		this.fuel -= slice;
+		return slice;
+	}
+
+	// the allocations an interpreter may make before checking back; like
+	// fuel, every worker and actor of a script draws on the script's own
+	synchronized long grantAllocations() {
+		if (this.parent != null)
+			return this.parent.grantAllocations();
+		if (this.allocations <= 0)
+			throw new Exceeded("Script ran out of allocations.");
+		var slice = Math.min(ALLOCATION_SLICE, this.allocations);
+		this.allocations -= slice;
+		return slice;
+	}
+
+	// the part of a slice an interpreter that is done never used
+	synchronized void refundAllocations(long unused) {
+		if (this.parent != null)
+			this.parent.refundAllocations(unused);
+		else
+			this.allocations += unused;
+	}
+
+	// stops the script if it was cancelled or is out of time
+	void check() {
+		if (this.cancelled)
+			throw new Exceeded("Script was cancelled.");
+		if (this.parent != null)
+			this.parent.check();
+		else if (this.deadline != 0 && System.nanoTime() - this.deadline >= 0)
+			throw new Exceeded("Script ran out of time.");
+	}
+
+	// how long the script may still wait, in nanoseconds
+	long remaining() {
+		if (this.parent != null)
+			return this.parent.remaining();
+		if (this.deadline == 0)
+			return Long.MAX_VALUE;
+		return Math.max(0, this.deadline - System.nanoTime());
+	}
+
+	// the script is about to wait, for its event loop or a read that may
+	// block, and is done waiting
+	void waiting() {
+		if (this.idle != null)
+			this.idle.run();
+	}
+
+	void running() {
+		if (this.busy != null)
+			this.busy.run();
+	}
+}
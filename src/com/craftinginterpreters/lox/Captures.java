@@ -0,0 +1,27 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Map;
+import java.util.Set;
+
+// What the Resolver worked out about a function: the variables it closes
+// over, each with its distance from the environment the function is made in,
+// the globals it uses, and which of its parameters live in cells.
+class Captures {
+	final String[] names;
+	final int[] distances;
+	final String[] globals;
+	final boolean[] cellParams;
+
+	Captures(Map<String, Integer> upvalues, Set<String> globals, boolean[] cellParams) {
+		this.names = new String[upvalues.size()];
+		this.distances = new int[upvalues.size()];
+		var i = 0;
+		for (var upvalue : upvalues.entrySet()) {
+			this.names[i] = upvalue.getKey();
+			this.distances[i] = upvalue.getValue();
+			i++;
+		}
+		this.globals = globals.toArray(new String[0]);
+		this.cellParams = cellParams;
+	}
+}
@@ -0,0 +1,12 @@
+package com.craftinginterpreters.lox;
+
+// A variable shared between the scope that declares it and the closures that
+// capture it. Only variables that are captured and can change afterwards get
+// one; everything else is copied into closures by value.
+class Cell extends Mutable {
+	Object value;
+
+	Cell(Object value) {
+		this.value = value;
+	}
+}
@@ -0,0 +1,114 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+// Buffered standard input and output of an interpreter. Everything the
+// interpreter prints or reads goes through here, so the REPL, print, puts
+// and gets share one buffer in each direction. Parallel workers print
+// through it too, a whole line at a time. Runtime errors go to err, after
+// whatever was printed before them.
+class Console {
+	enum Flush {
+		LINE, // after every line, for interactive use
+		SIZE, // whenever BUFFER_SIZE characters have piled up
+		EXIT  // only when the program is done
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final BufferedReader in;
+	private final Writer out;
+	private final Flush flush;
+	private final StringBuilder buffer = new StringBuilder();
+	// held while waiting on in, so that printing from other threads isn't
+	// stalled behind a read
+	private final Object reading = new Object();
+	final PrintStream err;
+
+	Console(InputStream in, OutputStream out, PrintStream err, Charset charset, Flush flush) {
+		this.in = new BufferedReader(new InputStreamReader(in, charset), BUFFER_SIZE);
+		this.out = new OutputStreamWriter(out, charset);
+		this.err = err;
+		this.flush = flush;
+	}
+
+	static Console standard(Flush flush) {
+		return new Console(System.in, System.out, System.err, System.out.charset(), flush);
+	}
+
+	// for interpreters that only hold what the resolver works out
+	static Console detached() {
+		return new Console(InputStream.nullInputStream(), OutputStream.nullOutputStream(),
+				new PrintStream(OutputStream.nullOutputStream()), Charset.defaultCharset(), Flush.EXIT);
+	}
+
+	// the error that stopped a script, after what it printed
+	void error(String message) {
+		this.flush();
+		this.err.println(message);
+	}
+
+	// line buffering when a person is watching, big chunks otherwise
+	static Flush defaultFlush() {
+		return System.console() != null ? Flush.LINE : Flush.SIZE;
+	}
+
+	synchronized void print(String text) {
+		this.buffer.append(text);
+		if (this.flush == Flush.SIZE && this.buffer.length() >= BUFFER_SIZE)
+			this.flush();
+	}
+
+	synchronized void println(String text) {
+		this.buffer.append(text).append('\n');
+		if (this.flush == Flush.LINE || (this.flush == Flush.SIZE && this.buffer.length() >= BUFFER_SIZE))
+			this.flush();
+	}
+
+	synchronized void flush() {
+		if (this.buffer.isEmpty())
+			return;
+		try {
+			this.out.append(this.buffer);
+			this.out.flush();
+		} catch (IOException e) {
+			// like System.out, carry on when the reader has gone away
+		}
+		this.buffer.setLength(0);
+	}
+
+	// returns null at the end of the input
+	String readLine() {
+		return this.readLine(null);
+	}
+
+	// the same, for a script, which holds no core while it waits for input
+	// that hasn't come yet
+	String readLine(Budget budget) {
+		// whatever was printed so far is likely a prompt for this input
+		this.flush();
+		synchronized (this.reading) {
+			try {
+				if (budget == null || this.in.ready())
+					return this.in.readLine();
+				budget.waiting();
+				try {
+					return this.in.readLine();
+				} finally {
+					budget.running();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+// An interpreter that stops at breakpoints and steps through a script for a
+// DebugSession. It is only made when a debugger is attached: scripts run
+// without one never load this class, so Interpreter.execute and
+// executeFunction stay the plain calls they are and cost nothing extra.
+class DebugInterpreter extends Interpreter {
+	enum Resume {
+		CONTINUE, // to the next breakpoint
+		STEP,     // to the next line, into calls
+		NEXT,     // to the next line in this function or its callers
+		FINISH    // to the next line after this function returns
+	}
+
+	private static class Frame {
+		final String name;
+		final Environment environment;
+		// the line of the statement running in this frame, and the first
+		// statement run on it
+		int line = -1;
+		Stmt first = null;
+
+		Frame(String name, Environment environment) {
+			this.name = name;
+			this.environment = environment;
+		}
+	}
+
+	private final DebugSession session;
+	private final LineTable lines = new LineTable();
+	private final Set<Integer> breakpoints = new HashSet<>();
+	private final List<Frame> frames = new ArrayList<>();
+	// stop before the first line, so breakpoints can be set
+	private Resume resume = Resume.STEP;
+	private int stepDepth = 0;
+
+	DebugInterpreter(List<String> scriptArgs, Console console, DebugSession session) {
+		super(scriptArgs, console);
+		this.session = session;
+		this.frames.add(new Frame("<script>", this.globals));
+	}
+
+	@Override
+	void execute(Stmt statement) {
+		var frame = this.frames.get(this.frames.size() - 1);
+		var line = this.lines.line(statement);
+		// a line is stopped at once, however many statements it holds, and
+		// again when a loop comes back to its first one
+		if (line >= 0 && (line != frame.line || statement == frame.first)) {
+			frame.line = line;
+			frame.first = statement;
+			var reason = this.stopReason(line);
+			if (reason != null) {
+				// what was printed so far belongs before the stop
+				this.console.flush();
+				this.session.pause(this, reason, line);
+			}
+		}
+		super.execute(statement);
+	}
+
+	@Override
+	void executeFunction(LoxFunction function, List<Stmt> body, Environment frame) {
+		this.frames.add(new Frame(function.name(), frame));
+		try {
+			super.executeFunction(function, body, frame);
+		} finally {
+			this.frames.remove(this.frames.size() - 1);
+		}
+	}
+
+	private String stopReason(int line) {
+		if (this.breakpoints.contains(line))
+			return "breakpoint";
+		return switch (this.resume) {
+			case CONTINUE -> null;
+			case STEP -> "step";
+			case NEXT -> this.frames.size() <= this.stepDepth ? "step" : null;
+			case FINISH -> this.frames.size() < this.stepDepth ? "step" : null;
+		};
+	}
+
+	void resume(Resume resume) {
+		this.resume = resume;
+		this.stepDepth = this.frames.size();
+	}
+
+	void addBreakpoint(int line) {
+		this.breakpoints.add(line);
+	}
+
+	void removeBreakpoint(int line) {
+		this.breakpoints.remove(line);
+	}
+
+	void detach() {
+		this.breakpoints.clear();
+		this.resume = Resume.CONTINUE;
+	}
+
+	// innermost call first
+	List<String> stack() {
+		var stack = new ArrayList<String>();
+		for (var i = this.frames.size() - 1; i >= 0; i--) {
+			var frame = this.frames.get(i);
+			stack.add("#" + (this.frames.size() - 1 - i) + " " + frame.name + " line " + frame.line);
+		}
+		return stack;
+	}
+
+	// the scopes in reach of the current statement, innermost first, up to
+	// and including the file's globals
+	List<String> locals() {
+		var scopes = new ArrayList<String>();
+		var depth = 0;
+		for (var env = this.environment(); env != null && env != this.builtins; env = env.enclosing) {
+			var label = env == env.globals ? "globals" : "scope " + depth++;
+			scopes.add(label + ": " + describe(env.variables()));
+		}
+		return scopes;
+	}
+
+	// a variable in reach of the current statement, with an instance's fields
+	String inspect(String name) {
+		for (var env = this.environment(); env != null && env != this.builtins; env = env.enclosing) {
+			if (env.contains(name))
+				return name + " = " + describeValue(env.variables().get(name));
+		}
+		throw new NativeError("Undefined variable '" + name + "'.");
+	}
+
+	private static String describeValue(Object value) {
+		if (value instanceof LoxInstance instance)
+			return stringify(instance) + " " + describe(instance.fields());
+		return stringify(value);
+	}
+
+	private static String describe(Map<String, Object> variables) {
+		var joiner = new StringJoiner(", ", "{", "}");
+		variables.forEach((name, value) -> joiner.add(name + ": " + stringify(value)));
+		return joiner.toString();
+	}
+}
@@ -0,0 +1,137 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The debugger's end of a debug run (see scripts/jlox-debug.py for a client).
+ * The script waits for one debugger to connect to a Unix domain socket and
+ * stops before its first line.
+ *
+ * The protocol is lines of text. While the script is stopped the debugger
+ * sends commands, and each is answered by its output followed by "ok", or
+ * by "error <message>":
+ *
+ *   break <line>, clear <line>    set or remove a breakpoint
+ *   stack                         the calls in progress, innermost first
+ *   locals                        the variables in reach, scope by scope
+ *   print <name>                  a variable, with an instance's fields
+ *   continue, step, next, finish  run on to a breakpoint, the next line,
+ *                                 the next line in this function, or the
+ *                                 next line after it returns
+ *
+ * The script tells the debugger "stopped <reason> <line>" when it stops and
+ * "exited <status>" when it is done.
+ */
+class DebugSession implements Closeable {
+	private final ServerSocketChannel server;
+	private final SocketChannel channel;
+	private final BufferedReader in;
+	private final PrintStream out;
+	private final Path socket;
+	private boolean attached = true;
+
+	private DebugSession(Path socket, ServerSocketChannel server, SocketChannel channel) {
+		this.socket = socket;
+		this.server = server;
+		this.channel = channel;
+		this.in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+		this.out = new PrintStream(Channels.newOutputStream(channel), true, StandardCharsets.UTF_8);
+	}
+
+	static Path defaultSocket() {
+		var path = System.getenv("JLOX_DEBUG_SOCKET");
+		if (path != null && !path.isEmpty())
+			return Paths.get(path);
+		return Paths.get(System.getProperty("java.io.tmpdir"), "jlox-debug-" + System.getProperty("user.name") + ".sock");
+	}
+
+	// waits for a debugger to connect
+	static DebugSession listen(Path socket) throws IOException {
+		Files.deleteIfExists(socket);
+		var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			System.err.println("jlox waiting for a debugger on " + socket);
+			return new DebugSession(socket, server, server.accept());
+		} catch (IOException e) {
+			server.close();
+			throw e;
+		}
+	}
+
+	// takes commands until one resumes the script
+	void pause(DebugInterpreter intp, String reason, int line) {
+		if (!this.attached)
+			return;
+		this.out.println("stopped " + reason + " " + line);
+
+		for (;;) {
+			String command;
+			try {
+				command = this.in.readLine();
+			} catch (IOException e) {
+				command = null;
+			}
+			// the debugger went away: let the script run on by itself
+			if (command == null) {
+				this.attached = false;
+				intp.detach();
+				return;
+			}
+
+			var words = command.trim().split("\\s+", 2);
+			var argument = words.length > 1 ? words[1] : "";
+			try {
+				switch (words[0]) {
+				case "break" -> intp.addBreakpoint(lineNumber(argument));
+				case "clear" -> intp.removeBreakpoint(lineNumber(argument));
+				case "stack" -> intp.stack().forEach(this.out::println);
+				case "locals" -> intp.locals().forEach(this.out::println);
+				case "print" -> this.out.println(intp.inspect(argument));
+				case "continue", "step", "next", "finish" -> {
+					intp.resume(DebugInterpreter.Resume.valueOf(words[0].toUpperCase()));
+					this.out.println("ok");
+					return;
+				}
+				default -> throw new NativeError("Unknown command '" + words[0] + "'.");
+				}
+				this.out.println("ok");
+			} catch (NativeError e) {
+				this.out.println("error " + e.getMessage());
+			}
+		}
+	}
+
+	void exited(int status) {
+		if (this.attached)
+			this.out.println("exited " + status);
+	}
+
+	private static int lineNumber(String text) {
+		try {
+			return Integer.parseInt(text);
+		} catch (NumberFormatException e) {
+			throw new NativeError("Expect a line number.");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+		this.server.close();
+		Files.deleteIfExists(this.socket);
+	}
+}
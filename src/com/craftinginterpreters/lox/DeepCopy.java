@@ -0,0 +1,163 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+
+// Copies values from one interpreter to another, so no two threads ever share
+// an object a script can change. Nil, booleans, numbers, strings, data
+// classes and actors can't change and go as they are. A message only takes
+// lists, maps, Float64Arrays and data records besides. Starting an actor also
+// copies the function it runs, and with it the world it closes over: its
+// environments, and of the globals only those it or a function it reaches
+// uses, which go into the actor's globals, with the classes, instances and
+// cells in them. Natives become the actor's natives of the same name.
+// Anything tied to a thread, like a file or a generator, comes out as nil.
+class DeepCopy {
+	private final Map<Object, Object> copies = new IdentityHashMap<>();
+	// whether functions and the rest of the world may be copied
+	private final boolean world;
+	private Environment builtins = null;
+	// the caller's interpreter and globals and the actor's, and the names of
+	// the globals found in use but not copied yet
+	private Interpreter from = null;
+	private Environment fromGlobals = null;
+	private Environment toGlobals = null;
+	private final Queue<String> reached = new ArrayDeque<>();
+
+	private DeepCopy(boolean world) {
+		this.world = world;
+	}
+
+	static Object message(Object value) {
+		return new DeepCopy(false).copy(value);
+	}
+
+	// the function an actor runs, moved from the caller's world into the
+	// actor's interpreter
+	static LoxCallable world(Interpreter from, Interpreter to, LoxCallable function) {
+		var copier = new DeepCopy(true);
+		from.builtins.variables().forEach((name, value) -> copier.copies.put(value, to.builtins.getAt(0, name)));
+		copier.builtins = to.builtins;
+		copier.from = from;
+		copier.fromGlobals = from.globals;
+		copier.toGlobals = to.globals;
+		copier.copies.put(from.globals, to.globals);
+		var copy = (LoxCallable) copier.copy(function);
+		// copying a global can reach more of them
+		while (!copier.reached.isEmpty()) {
+			var name = copier.reached.remove();
+			if (from.globals.contains(name) && !to.globals.contains(name))
+				to.globals.define(name, copier.copy(from.globals.capture(0, name)));
+		}
+		return copy;
+	}
+
+	// notes the caller's globals that a function being copied uses
+	void reach(Environment globals, Stmt.Function declaration) {
+		if (globals != this.fromGlobals)
+			return;
+		var captures = this.from.captures(declaration);
+		if (captures == null)
+			return;
+		for (var name : captures.globals) {
+			if (!this.toGlobals.contains(name))
+				this.reached.add(name);
+		}
+	}
+
+	// for classes and instances that may refer back to themselves; call it
+	// before copying what they hold
+	void copied(Object from, Object to) {
+		this.copies.put(from, to);
+	}
+
+	Object copy(Object value) {
+		if (value == null || value instanceof Boolean || Numbers.isNumber(value) || value instanceof String
+				|| value instanceof LoxDataClass || value instanceof LoxActor)
+			return value;
+		if (this.copies.containsKey(value))
+			return this.copies.get(value);
+
+		var copy = this.make(value);
+		// copying what a value holds can come back around to the value itself
+		if (this.copies.containsKey(value))
+			return this.copies.get(value);
+		this.copies.put(value, copy);
+		return copy;
+	}
+
+	private Object make(Object value) {
+		if (value instanceof LoxList list) {
+			var copy = new LoxList();
+			this.copied(list, copy);
+			for (var i = 0; i < list.size(); i++) {
+				copy.append(this.copy(list.get(i)));
+			}
+			return copy;
+		}
+		if (value instanceof LoxMap map) {
+			var copy = new LoxMap();
+			this.copied(map, copy);
+			var keys = map.keys();
+			var values = map.values();
+			for (var i = 0; i < keys.size(); i++) {
+				copy.put(this.copy(keys.get(i)), this.copy(values.get(i)));
+			}
+			return copy;
+		}
+		if (value instanceof LoxFloat64Array array)
+			return new LoxFloat64Array(array.values.clone());
+		if (value instanceof LoxRecord record) {
+			var values = record.values();
+			for (var i = 0; i < values.length; i++) {
+				values[i] = this.copy(values[i]);
+			}
+			return new LoxRecord(record.class_, values);
+		}
+
+		if (!this.world)
+			throw new NativeError("Can only send nil, booleans, numbers, strings, lists, maps, Float64Arrays, data records and actors.");
+
+		if (value instanceof LoxFunction function)
+			return function.copy(this);
+		if (value instanceof LoxClass class_)
+			return class_.copy(this);
+		if (value instanceof LoxInstance instance)
+			return instance.copy(this);
+		if (value instanceof Cell cell) {
+			var copy = new Cell(null);
+			this.copied(cell, copy);
+			copy.value = this.copy(cell.value);
+			return copy;
+		}
+		if (value instanceof MemoizedFunction memoized)
+			return new MemoizedFunction((LoxCallable) this.copy(memoized.function));
+		if (value instanceof LoxModule module)
+			return module.copy(this);
+		return null;
+	}
+
+	Environment environment(Environment from) {
+		if (this.copies.get(from) instanceof Environment copy)
+			return copy;
+
+		// the builtins are shared by all the files of a script
+		if (from.enclosing == null)
+			return this.builtins;
+
+		var copy = from.globals == from
+				? Environment.global(this.environment(from.enclosing))
+				: new Environment(this.environment(from.enclosing));
+		this.copies.put(from, copy);
+		this.fill(from, copy);
+		return copy;
+	}
+
+	private void fill(Environment from, Environment to) {
+		for (var entry : from.entries()) {
+			to.define(entry.getKey(), this.copy(entry.getValue()));
+		}
+	}
+}
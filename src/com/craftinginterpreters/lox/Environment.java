@@ -1,23 +1,86 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeMap;
 
 class Environment {
+	// Where a global name was found, kept on the Expr.Variable or Expr.Assign
+	// that uses it, so the next time it is one pointer away. It only holds
+	// for the globals it was found from: the same code runs against other
+	// globals in a module, a worker or an actor. A global keeps its cell
+	// once defined, but a builtin may be shadowed by a global defined later,
+	// so a builtin's binding also needs the globals to have no new names.
+	static class Global {
+		final Environment globals;
+		final Cell cell;
+		// the globals' shape when a builtin was found, or -1 for a global
+		final int shape;
+
+		private Global(Environment globals, Cell cell, int shape) {
+			this.globals = globals;
+			this.cell = cell;
+			this.shape = shape;
+		}
+
+		boolean binds(Environment globals) {
+			return this.globals == globals && (this.shape < 0 || this.shape == globals.shape);
+		}
+	}
+
 	private final Map<String, Object> values = new HashMap<>();
 	final Environment enclosing;
+	// the global scope of the file whose code runs in this environment
+	final Environment globals;
+	// globals and builtins keep every variable in a cell of its own
+	private final boolean cells;
+	// counts the names defined in a global scope
+	private int shape = 0;
 
 	Environment() {
 		this.enclosing = null;
+		this.globals = this;
+		this.cells = true;
 	}
 
 	Environment(Environment enclosing) {
 		this.enclosing = enclosing;
+		this.globals = enclosing.globals;
+		this.cells = false;
+	}
+
+	private Environment(Environment enclosing, boolean global) {
+		this.enclosing = enclosing;
+		this.globals = global ? this : enclosing.globals;
+		this.cells = global;
+	}
+
+	// the global scope of a file, in front of the builtins every file shares
+	static Environment global(Environment builtins) {
+		return new Environment(builtins, true);
+	}
+
+	// the variables of this scope alone, by name, for a debugger to show
+	Map<String, Object> variables() {
+		var variables = new TreeMap<String, Object>();
+		this.values.forEach((name, value) -> variables.put(name, unwrap(value)));
+		return variables;
+	}
+
+	// the variables of this scope as they are stored, cells and all
+	Set<Map.Entry<String, Object>> entries() {
+		return Collections.unmodifiableMap(this.values).entrySet();
+	}
+
+	boolean contains(String name) {
+		return this.values.containsKey(name);
 	}
 
 	Object get(Token name) {
 		if (this.values.containsKey(name.lexeme))
-			return this.values.get(name.lexeme);
+			return unwrap(this.values.get(name.lexeme));
 
 		if (this.enclosing != null)
 			return this.enclosing.get(name);
@@ -30,20 +93,55 @@ class Environment {
 	}
 	
 	Object getAt(int distance, String name) {
+		return unwrap(this.ancestor(distance).values.get(name));
+	}
+
+	// the variable itself, cell and all, for a closure to take over
+	Object capture(int distance, String name) {
 		return this.ancestor(distance).values.get(name);
 	}
+
+	private static Object unwrap(Object value) {
+		return value instanceof Cell cell ? cell.value : value;
+	}
+
+	private void set(String name, Object value) {
+		if (this.values.get(name) instanceof Cell cell)
+			cell.value = value;
+		else
+			this.values.put(name, value);
+	}
 	
 	void define(Token name, Object value) {
 		this.define(name.lexeme, value);
 	}
 
 	void define(String name, Object value) {
-		this.values.put(name, value);
+		if (!this.cells) {
+			this.values.put(name, value);
+			return;
+		}
+		// defining a global again changes it in place, for the code bound to it
+		if (!(value instanceof Cell) && this.values.get(name) instanceof Cell cell) {
+			cell.value = value;
+			return;
+		}
+		if (this.values.put(name, value instanceof Cell ? value : new Cell(value)) == null)
+			this.shape++;
+	}
+
+	// finds a global, which must be defined by now, for code to bind to
+	Global bind(Token name) {
+		if (this.values.get(name.lexeme) instanceof Cell cell)
+			return new Global(this, cell, -1);
+		if (this.enclosing != null && this.enclosing.values.get(name.lexeme) instanceof Cell cell)
+			return new Global(this, cell, this.shape);
+		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
 	}
 
 	void assign(Token name, Object value) {
 		if (this.values.containsKey(name.lexeme)) {
-			this.values.put(name.lexeme, value);
+			this.set(name.lexeme, value);
 			return;
 		}
 
@@ -58,7 +156,7 @@ class Environment {
 	void assignAt(int distance, Token name, Object value) {
 		var env = this.ancestor(distance);
 		if (env.values.containsKey(name.lexeme)) {
-			env.values.put(name.lexeme, value);
+			env.set(name.lexeme, value);
 			return;
 		}
 
@@ -0,0 +1,161 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Timers and asynchronous I/O for a script, run on the script's own thread
+// once the script's top level is done. Timers wait in a queue ordered by
+// when they are due. I/O runs on a few shared background threads, which post
+// the callback back here, so scripts never see another thread. Lox.runFile
+// runs the loop until no timer or I/O is left.
+class EventLoop {
+	// posted to wake the loop when the script is cancelled
+	private static final Consumer<Interpreter> WAKE = intp -> {};
+
+	private static final ExecutorService io = Executors.newFixedThreadPool(
+			4,
+			Thread.ofPlatform().name("lox-io-", 0).daemon().factory());
+
+	private static class Timer {
+		final Integer id;
+		final LoxCallable callback;
+		// in nanoseconds, or 0 for a one-off timer
+		final long interval;
+		long due;
+		// ties on due go first come, first served
+		long order;
+
+		Timer(Integer id, LoxCallable callback, long interval) {
+			this.id = id;
+			this.callback = callback;
+			this.interval = interval;
+		}
+	}
+
+	private final PriorityQueue<Timer> timers = new PriorityQueue<>(
+			Comparator.<Timer>comparingLong(timer -> timer.due).thenComparingLong(timer -> timer.order));
+	// timers not yet run or cleared, by id; a cleared timer is dropped from
+	// the queue when it comes up
+	private final Map<Integer, Timer> active = new HashMap<>();
+	private final LinkedBlockingQueue<Consumer<Interpreter>> completions = new LinkedBlockingQueue<>();
+	// I/O started and not yet called back
+	private int pending = 0;
+	private int nextId = 1;
+	private long order = 0;
+
+	Object setTimer(Object callback, Object delay, boolean repeat) {
+		if (!(callback instanceof LoxCallable function) || function.arity() != 0)
+			throw new NativeError("Timer callback must be a function that takes no arguments.");
+		if (!Numbers.isNumber(delay))
+			throw new NativeError("Timer delay must be a number.");
+
+		var nanos = Math.max(0, (long) (Numbers.value(delay) * 1_000_000));
+		var timer = new Timer(Numbers.box(this.nextId++), function, repeat ? Math.max(1, nanos) : 0);
+		this.schedule(timer, System.nanoTime() + nanos);
+		this.active.put(timer.id, timer);
+		return timer.id;
+	}
+
+	private void schedule(Timer timer, long due) {
+		timer.due = due;
+		timer.order = this.order++;
+		this.timers.add(timer);
+	}
+
+	void clearTimer(Object id) {
+		this.active.remove(id);
+	}
+
+	// runs work in the background, then calls back with (error, result):
+	// nil and the result, or the error message and nil
+	void submit(Callable<Object> work, Object callback) {
+		if (!(callback instanceof LoxCallable function) || function.arity() != 2)
+			throw new NativeError("Callback must be a function that takes 2 arguments.");
+
+		this.pending++;
+		io.execute(() -> {
+			Object result = null;
+			String error = null;
+			try {
+				result = work.call();
+			} catch (NativeError e) {
+				error = e.getMessage();
+			} catch (Exception e) {
+				error = String.valueOf(e.getMessage());
+			}
+			var args = new Object[] {error, result};
+			this.completions.add(intp -> intp.callBack(function, args));
+		});
+	}
+
+	// runs until there is nothing left to wait for, or a callback fails, or
+	// the script's budget runs out while it waits
+	void run(Interpreter intp) {
+		var budget = intp.budget();
+		if (budget != null)
+			budget.wake(() -> this.completions.add(WAKE));
+		while (!intp.failed()) {
+			var completion = this.completions.poll();
+			if (completion != null) {
+				this.complete(intp, completion);
+				continue;
+			}
+
+			var timer = this.timers.peek();
+			if (timer != null && this.active.get(timer.id) != timer) {
+				this.timers.poll();
+				continue;
+			}
+			if (timer == null && this.pending == 0)
+				return;
+
+			var wait = timer == null ? Long.MAX_VALUE : timer.due - System.nanoTime();
+			if (wait <= 0) {
+				if (!intp.withinBudget())
+					return;
+				this.timers.poll();
+				if (timer.interval > 0)
+					this.schedule(timer, System.nanoTime() + timer.interval);
+				else
+					this.active.remove(timer.id);
+				intp.callBack(timer.callback);
+				continue;
+			}
+
+			// idle until the next timer is due, some I/O is done or the
+			// budget runs out
+			if (budget != null) {
+				wait = Math.min(wait, budget.remaining());
+				budget.waiting();
+			}
+			try {
+				completion = this.completions.poll(wait, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				if (budget != null)
+					budget.running();
+			}
+			if (!intp.withinBudget())
+				return;
+			if (completion != null)
+				this.complete(intp, completion);
+		}
+	}
+
+	private void complete(Interpreter intp, Consumer<Interpreter> completion) {
+		if (completion == WAKE)
+			return;
+		this.pending--;
+		completion.accept(intp);
+	}
+}
@@ -14,8 +14,11 @@ abstract class Expr {
 		R visitCallExpr(Call expr);
 		R visitGetExpr(Get expr);
 		R visitSetExpr(Set expr);
+		R visitIndexExpr(Index expr);
+		R visitSetIndexExpr(SetIndex expr);
 		R visitThisExpr(This expr);
 		R visitSuperExpr(Super expr);
+		R visitSlotExpr(Slot expr);
 	}
 
 	abstract<R> R accept(Visitor<R> visitor);
@@ -24,6 +27,7 @@ abstract class Expr {
 		final Expr left;
 		final Token operator;
 		final Expr right;
+		boolean numeric;
 
 		Binary(Expr left, Token operator, Expr right) {
 			this.left = left;
@@ -83,6 +87,7 @@ abstract class Expr {
 	static class Unary extends Expr {
 		final Token operator;
 		final Expr right;
+		boolean numeric;
 
 		Unary(Token operator, Expr right) {
 			this.operator = operator;
@@ -97,6 +102,7 @@ abstract class Expr {
 
 	static class Variable extends Expr {
 		final Token name;
+		Environment.Global global;
 
 		Variable(Token name) {
 			this.name = name;
@@ -111,6 +117,8 @@ abstract class Expr {
 	static class Assign extends Expr {
 		final Token name;
 		final Expr value;
+		Environment.Global global;
+		TypeChecker.Type guard;
 
 		Assign(Token name, Expr value) {
 			this.name = name;
@@ -127,6 +135,7 @@ abstract class Expr {
 		final Expr callee;
 		final Token paren;
 		final List<Expr> arguments;
+		Inliner.Inline inline;
 
 		Call(Expr callee, Token paren, List<Expr> arguments) {
 			this.callee = callee;
@@ -143,6 +152,7 @@ abstract class Expr {
 	static class Get extends Expr {
 		final Expr object;
 		final Token name;
+		LoxDataClass.Field field;
 
 		Get(Expr object, Token name) {
 			this.object = object;
@@ -172,6 +182,42 @@ abstract class Expr {
 		}
 	}
 
+	static class Index extends Expr {
+		final Expr object;
+		final Token bracket;
+		final Expr index;
+
+		Index(Expr object, Token bracket, Expr index) {
+			this.object = object;
+			this.bracket = bracket;
+			this.index = index;
+		}
+    
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIndexExpr(this);
+		}
+	}
+
+	static class SetIndex extends Expr {
+		final Expr object;
+		final Token bracket;
+		final Expr index;
+		final Expr value;
+
+		SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+			this.object = object;
+			this.bracket = bracket;
+			this.index = index;
+			this.value = value;
+		}
+    
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSetIndexExpr(this);
+		}
+	}
+
 	static class This extends Expr {
 		final Token keyword;
 
@@ -200,4 +246,19 @@ abstract class Expr {
 		}
 	}
 
+	static class Slot extends Expr {
+		final Token name;
+		final int index;
+
+		Slot(Token name, int index) {
+			this.name = name;
+			this.index = index;
+		}
+    
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSlotExpr(this);
+		}
+	}
+
 }
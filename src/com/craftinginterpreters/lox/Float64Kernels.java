@@ -0,0 +1,111 @@
+package com.craftinginterpreters.lox;
+
+// Bulk operations behind the Float64Array natives. The Vector API versions
+// are used when the JVM was started with --add-modules jdk.incubator.vector,
+// the plain loops otherwise. Reductions may round differently between the
+// two, since the vector versions add lanes in a different order.
+interface Float64Kernels {
+	Float64Kernels INSTANCE = choose();
+
+	private static Float64Kernels choose() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return new VectorKernels();
+			} catch (LinkageError e) {
+				// fall through to the scalar loops
+			}
+		}
+		return new Scalar();
+	}
+
+	void add(double[] a, double[] b, double[] out);
+
+	void sub(double[] a, double[] b, double[] out);
+
+	void mul(double[] a, double[] b, double[] out);
+
+	void div(double[] a, double[] b, double[] out);
+
+	void scale(double[] a, double factor, double[] out);
+
+	double dot(double[] a, double[] b);
+
+	double sum(double[] a);
+
+	double min(double[] a);
+
+	double max(double[] a);
+
+	class Scalar implements Float64Kernels {
+		@Override
+		public void add(double[] a, double[] b, double[] out) {
+			for (var i = 0; i < a.length; i++) {
+				out[i] = a[i] + b[i];
+			}
+		}
+
+		@Override
+		public void sub(double[] a, double[] b, double[] out) {
+			for (var i = 0; i < a.length; i++) {
+				out[i] = a[i] - b[i];
+			}
+		}
+
+		@Override
+		public void mul(double[] a, double[] b, double[] out) {
+			for (var i = 0; i < a.length; i++) {
+				out[i] = a[i] * b[i];
+			}
+		}
+
+		@Override
+		public void div(double[] a, double[] b, double[] out) {
+			for (var i = 0; i < a.length; i++) {
+				out[i] = a[i] / b[i];
+			}
+		}
+
+		@Override
+		public void scale(double[] a, double factor, double[] out) {
+			for (var i = 0; i < a.length; i++) {
+				out[i] = a[i] * factor;
+			}
+		}
+
+		@Override
+		public double dot(double[] a, double[] b) {
+			var sum = 0.0;
+			for (var i = 0; i < a.length; i++) {
+				sum += a[i] * b[i];
+			}
+			return sum;
+		}
+
+		@Override
+		public double sum(double[] a) {
+			var sum = 0.0;
+			for (var value : a) {
+				sum += value;
+			}
+			return sum;
+		}
+
+		@Override
+		public double min(double[] a) {
+			var min = Double.POSITIVE_INFINITY;
+			for (var value : a) {
+				min = Math.min(min, value);
+			}
+			return min;
+		}
+
+		@Override
+		public double max(double[] a) {
+			var max = Double.NEGATIVE_INFINITY;
+			for (var value : a) {
+				max = Math.max(max, value);
+			}
+			return max;
+		}
+	}
+}
@@ -0,0 +1,496 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Inlines calls to small functions once a file is resolved. A function
+// whose body is just "return value;", where value is at most MAX_SIZE nodes
+// and calls nothing (so it can't recurse), is inlined where it is called:
+// a global function declared once and never assigned, called by name, or a
+// method no other class in the file has a method of the same name as,
+// called on an object. The call is marked with a copy of value that reads
+// the arguments, and this, from slots (Expr.Slot), and the interpreter
+// evaluates it in place, without a frame or a return to unwind.
+//
+// The callee is still looked up on every call, so what the call means never
+// changes: if the global now holds another function, or the object's class
+// or a field gives another method, the call is made as usual.
+class Inliner implements Stmt.Visitor<Void>, Expr.Visitor<Void> {
+	// the most nodes a return value inlined can have
+	static final int MAX_SIZE = 16;
+
+	// cleared by --no-inline, and for debugging, so every call can be
+	// stepped into
+	static boolean enabled = true;
+
+	static class Inline {
+		final Stmt.Function declaration;
+		// the value returned, reading the arguments, then this, from slots
+		final Expr body;
+		final boolean method;
+
+		private Inline(Stmt.Function declaration, Expr body, boolean method) {
+			this.declaration = declaration;
+			this.body = body;
+			this.method = method;
+		}
+
+		boolean inlines(LoxFunction function) {
+			return function != null && function.declaration() == this.declaration;
+		}
+	}
+
+	private final Interpreter interpreter;
+	// names assigned anywhere in the file
+	private final Set<String> assigned = new HashSet<>();
+	private final Map<String, List<Stmt.Function>> methods = new HashMap<>();
+	private final Map<String, Inline> functionInlines = new HashMap<>();
+	private final Map<String, Inline> methodInlines = new HashMap<>();
+	// whether calls are being marked, after the file has been looked over
+	private boolean marking = false;
+
+	Inliner(Interpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	void inline(List<Stmt> statements) {
+		this.walk(statements);
+
+		var globals = new HashMap<String, Integer>();
+		for (var statement : statements) {
+			var name = declared(statement);
+			if (name != null)
+				globals.merge(name.lexeme, 1, Integer::sum);
+		}
+		for (var statement : statements) {
+			if (!(statement instanceof Stmt.Function function))
+				continue;
+			var name = function.name.lexeme;
+			if (globals.get(name) != 1 || this.assigned.contains(name))
+				continue;
+			var inline = this.inline(function, false);
+			if (inline != null)
+				this.functionInlines.put(name, inline);
+		}
+		this.methods.forEach((name, declarations) -> {
+			if (declarations.size() != 1 || name.equals("init"))
+				return;
+			var inline = this.inline(declarations.get(0), true);
+			if (inline != null)
+				this.methodInlines.put(name, inline);
+		});
+
+		if (this.functionInlines.isEmpty() && this.methodInlines.isEmpty())
+			return;
+		this.marking = true;
+		this.walk(statements);
+	}
+
+	// the global a top-level statement declares
+	private static Token declared(Stmt statement) {
+		if (statement instanceof Stmt.Var var)
+			return var.name;
+		if (statement instanceof Stmt.Function function)
+			return function.name;
+		if (statement instanceof Stmt.Class class_)
+			return class_.name;
+		if (statement instanceof Stmt.Import import_)
+			return import_.name;
+		if (statement instanceof Stmt.Data data)
+			return data.name;
+		return null;
+	}
+
+	private Inline inline(Stmt.Function function, boolean method) {
+		if (function.body.size() != 1 || !(function.body.get(0) instanceof Stmt.Return ret) || ret.value == null)
+			return null;
+		var substitution = new Substitution(function, method);
+		var body = substitution.copy(ret.value);
+		if (body == null || substitution.size > MAX_SIZE)
+			return null;
+		return new Inline(function, body, method);
+	}
+
+	private void walk(List<Stmt> statements) {
+		for (var statement : statements) {
+			if (statement != null)
+				this.walk(statement);
+		}
+	}
+
+	private void walk(Stmt statement) {
+		statement.accept(this);
+	}
+
+	private void walk(Expr expr) {
+		expr.accept(this);
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		this.walk(stmt.statements);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		this.walk(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		this.walk(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer != null)
+			this.walk(stmt.initializer);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		this.walk(stmt.condition);
+		this.walk(stmt.thenBranch);
+		if (stmt.elseBranch != null)
+			this.walk(stmt.elseBranch);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		this.walk(stmt.condition);
+		this.walk(stmt.body);
+		return null;
+	}
+
+	@Override
+	public Void visitCountedStmt(Stmt.Counted stmt) {
+		if (stmt.condition == null) {
+			this.walk(stmt.start);
+			this.walk(stmt.end);
+			if (stmt.step != null)
+				this.walk(stmt.step);
+		} else {
+			this.walk(stmt.start);
+			this.walk(stmt.condition);
+			this.walk(stmt.increment);
+		}
+		this.walk(stmt.body);
+		return null;
+	}
+
+	@Override
+	public Void visitEachStmt(Stmt.Each stmt) {
+		this.walk(stmt.iterable);
+		this.walk(stmt.body);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		this.walk(stmt.body);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value != null)
+			this.walk(stmt.value);
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		for (var method : stmt.methods) {
+			if (!this.marking)
+				this.methods.computeIfAbsent(method.name.lexeme, name -> new ArrayList<>()).add(method);
+			this.walk(method.body);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		return null;
+	}
+
+	@Override
+	public Void visitYieldStmt(Stmt.Yield stmt) {
+		if (stmt.value != null)
+			this.walk(stmt.value);
+		return null;
+	}
+
+	@Override
+	public Void visitDataStmt(Stmt.Data stmt) {
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		this.walk(expr.left);
+		this.walk(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		this.walk(expr.left);
+		this.walk(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		this.walk(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		this.walk(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		this.assigned.add(expr.name.lexeme);
+		this.walk(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		this.walk(expr.callee);
+		for (var argument : expr.arguments) {
+			this.walk(argument);
+		}
+		if (!this.marking)
+			return null;
+
+		Inline inline = null;
+		if (expr.callee instanceof Expr.Variable variable && !this.interpreter.isLocal(variable))
+			inline = this.functionInlines.get(variable.name.lexeme);
+		else if (expr.callee instanceof Expr.Get get)
+			inline = this.methodInlines.get(get.name.lexeme);
+		// a call with the wrong number of arguments fails as usual
+		if (inline != null && inline.declaration.params.size() == expr.arguments.size())
+			expr.inline = inline;
+		return null;
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get expr) {
+		this.walk(expr.object);
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set expr) {
+		this.walk(expr.object);
+		this.walk(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		this.walk(expr.object);
+		this.walk(expr.index);
+		return null;
+	}
+
+	@Override
+	public Void visitSetIndexExpr(Expr.SetIndex expr) {
+		this.walk(expr.object);
+		this.walk(expr.index);
+		this.walk(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitThisExpr(Expr.This expr) {
+		return null;
+	}
+
+	@Override
+	public Void visitSuperExpr(Expr.Super expr) {
+		return null;
+	}
+
+	@Override
+	public Void visitSlotExpr(Expr.Slot expr) {
+		return null;
+	}
+
+	// Copies a return value with its parameters and this read from slots, or
+	// gives null if it can't be inlined. Parts that don't read them are
+	// shared with the function's own body: what's left are globals, which
+	// are found the same from the call.
+	private class Substitution implements Expr.Visitor<Expr> {
+		private final List<Token> params;
+		private final boolean method;
+		// nodes seen so far
+		int size = 0;
+
+		Substitution(Stmt.Function function, boolean method) {
+			this.params = function.params;
+			this.method = method;
+		}
+
+		private Expr copy(Expr expr) {
+			this.size++;
+			return expr.accept(this);
+		}
+
+		@Override
+		public Expr visitBinaryExpr(Expr.Binary expr) {
+			var left = this.copy(expr.left);
+			var right = this.copy(expr.right);
+			if (left == null || right == null)
+				return null;
+			if (left == expr.left && right == expr.right)
+				return expr;
+			var copy = new Expr.Binary(left, expr.operator, right);
+			copy.numeric = expr.numeric;
+			return copy;
+		}
+
+		@Override
+		public Expr visitLogicalExpr(Expr.Logical expr) {
+			var left = this.copy(expr.left);
+			var right = this.copy(expr.right);
+			if (left == null || right == null)
+				return null;
+			if (left == expr.left && right == expr.right)
+				return expr;
+			return new Expr.Logical(left, expr.operator, right);
+		}
+
+		@Override
+		public Expr visitGroupingExpr(Expr.Grouping expr) {
+			var expression = this.copy(expr.expression);
+			if (expression == null)
+				return null;
+			if (expression == expr.expression)
+				return expr;
+			return new Expr.Grouping(expression);
+		}
+
+		@Override
+		public Expr visitLiteralExpr(Expr.Literal expr) {
+			return expr;
+		}
+
+		@Override
+		public Expr visitUnaryExpr(Expr.Unary expr) {
+			var right = this.copy(expr.right);
+			if (right == null)
+				return null;
+			if (right == expr.right)
+				return expr;
+			var copy = new Expr.Unary(expr.operator, right);
+			copy.numeric = expr.numeric;
+			return copy;
+		}
+
+		@Override
+		public Expr visitVariableExpr(Expr.Variable expr) {
+			if (!Inliner.this.interpreter.isLocal(expr))
+				return expr;
+			// the body is a single return, so a local is a parameter
+			for (var i = 0; i < this.params.size(); i++) {
+				if (this.params.get(i).lexeme.equals(expr.name.lexeme))
+					return new Expr.Slot(expr.name, i);
+			}
+			// or one captured from a function the class is declared in
+			return null;
+		}
+
+		@Override
+		public Expr visitAssignExpr(Expr.Assign expr) {
+			return null;
+		}
+
+		@Override
+		public Expr visitCallExpr(Expr.Call expr) {
+			return null;
+		}
+
+		@Override
+		public Expr visitGetExpr(Expr.Get expr) {
+			var object = this.copy(expr.object);
+			if (object == null)
+				return null;
+			if (object == expr.object)
+				return expr;
+			return new Expr.Get(object, expr.name);
+		}
+
+		@Override
+		public Expr visitSetExpr(Expr.Set expr) {
+			var object = this.copy(expr.object);
+			var value = this.copy(expr.value);
+			if (object == null || value == null)
+				return null;
+			if (object == expr.object && value == expr.value)
+				return expr;
+			return new Expr.Set(object, expr.name, value);
+		}
+
+		@Override
+		public Expr visitIndexExpr(Expr.Index expr) {
+			var object = this.copy(expr.object);
+			var index = this.copy(expr.index);
+			if (object == null || index == null)
+				return null;
+			if (object == expr.object && index == expr.index)
+				return expr;
+			return new Expr.Index(object, expr.bracket, index);
+		}
+
+		@Override
+		public Expr visitSetIndexExpr(Expr.SetIndex expr) {
+			var object = this.copy(expr.object);
+			var index = this.copy(expr.index);
+			var value = this.copy(expr.value);
+			if (object == null || index == null || value == null)
+				return null;
+			if (object == expr.object && index == expr.index && value == expr.value)
+				return expr;
+			return new Expr.SetIndex(object, expr.bracket, index, value);
+		}
+
+		@Override
+		public Expr visitThisExpr(Expr.This expr) {
+			return this.method ? new Expr.Slot(expr.keyword, this.params.size()) : null;
+		}
+
+		@Override
+		public Expr visitSuperExpr(Expr.Super expr) {
+			return null;
+		}
+
+		@Override
+		public Expr visitSlotExpr(Expr.Slot expr) {
+			return expr;
+		}
+	}
+}
@@ -1,417 +1,1555 @@
-package com.craftinginterpreters.lox;
-
-import java.lang.Math;
-import java.util.*;
-
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-	final Environment globals = new Environment();
-	private final Map<Expr, Integer> locals = new HashMap<>();
-	private Environment environment = globals;
-
-	Interpreter() {
-		this.globals.define("clock", new Native("clock", 0) {
-			@Override
-			public Object call(Interpreter intp, List<Object> args) {
-				return (double) System.currentTimeMillis() / 1000.0;
-			}
-		});
-
-		this.globals.define("puts", new Native("puts", 1) {
-			@Override
-			public Object call(Interpreter intp, List<Object> args) {
-				System.out.println(intp.stringify(args.getFirst()));
-				return null;
-			}
-		});
-
-		this.globals.define("gets", new Native("gets", 0) {
-			@Override
-			public Object call(Interpreter intp, List<Object> args) {
-				return new java.util.Scanner(System.in).nextLine();
-			}
-		});
-
-		this.globals.define("toString", new Native("toString", 1) {
-			@Override
-			public Object call(Interpreter intp, List<Object> args) {
-				return intp.stringify(args.getFirst());
-			}
-		});
-
-		this.globals.define("toNumber", new Native("toNumber", 1) {
-			@Override
-			public Object call(Interpreter intp, List<Object> args) {
-				var arg = args.getFirst();
-				if (arg instanceof String)
-					return Scanner.toNumber((String) arg);
-				else if (arg instanceof Double)
-					return arg;
-				return Double.NaN;
-			}
-		});
-
-		this.globals.define("Object", new LoxClass(
-			"Object",
-			null,
-			new HashMap<>()
-		));
-
-		this.globals.define("Data", new LoxClass(
-				"Data",
-				null,
-				new HashMap<>()
-		));
-	}
-
-	void interpret(List<Stmt> statements) {
-		try {
-			for (Stmt statement : statements) {
-				this.execute(statement);
-			}
-		} catch (RuntimeError e) {
-			Lox.runtimeError(e);
-		}
-	}
-
-	private void execute(Stmt statement) {
-		statement.accept(this);
-	}
-
-	void resolve(Expr expr, int depth) {
-		this.locals.put(expr, depth);
-	}
-
-	@Override
-	public Void visitExpressionStmt(Stmt.Expression stmt) {
-		this.evaluate(stmt.expression);
-		return null;
-	}
-
-	@Override
-	public Void visitPrintStmt(Stmt.Print stmt) {
-		Object value = this.evaluate(stmt.expression);
-		System.out.println(this.stringify(value));
-		return null;
-	}
-
-	@Override
-	public Void visitVarStmt(Stmt.Var stmt) {
-		Object value = null;
-		if (stmt.initializer != null) {
-			value = this.evaluate(stmt.initializer);
-		}
-
-		this.environment.define(stmt.name, value);
-		return null;
-	}
-
-	@Override
-	public Void visitBlockStmt(Stmt.Block stmt) {
-		this.executeBlock(stmt.statements, new Environment(this.environment));
-		return null;
-	}
-
-	void executeBlock(List<Stmt> statements, Environment environment) {
-		Environment previous = this.environment;
-		try {
-			this.environment = environment;
-			for (Stmt statement : statements) {
-				this.execute(statement);
-			}
-		} finally {
-			this.environment = previous;
-		}
-	}
-
-	@Override
-	public Void visitFunctionStmt(Stmt.Function stmt) {
-		var function = new LoxFunction(stmt, this.environment, false, null);
-		this.environment.define(stmt.name, function);
-		return null;
-	}
-
-	@Override
-	public Void visitReturnStmt(Stmt.Return stmt) {
-		Object value = null;
-		if (stmt.value != null)
-			value = this.evaluate(stmt.value);
-		throw new Return(value);
-	}
-
-	@Override
-	public Void visitClassStmt(Stmt.Class stmt) {
-		this.environment.define(stmt.name, null);
-
-		LoxClass super_ = null;
-		if (stmt.super_ != null) {
-			var superResult = this.evaluate(stmt.super_);
-			if (!(superResult instanceof LoxClass)) {
-				Lox.runtimeError(new RuntimeError(
-					stmt.super_.name,
-					"Superclass must be a class."
-				));
-			} else {
-				super_ = (LoxClass) superResult;
-				this.environment = new Environment(this.environment);
-				this.environment.define("super", super_);
-			}
-		}
-
-		var class_ = new LoxClass(stmt.name.lexeme, super_, new HashMap<>());
-
-		for (var method : stmt.methods) {
-			var isInitializer = method.name.lexeme.equals("init");
-			var function = new LoxFunction(method, this.environment, isInitializer, class_);
-			class_.methods.put(method.name.lexeme, function);
-		}
-
-		if (super_ != null) {
-			this.environment = this.environment.enclosing;
-		}
-
-		this.environment.assign(stmt.name, class_);
-		return null;
-	}
-
-	@Override
-	public Void visitIfStmt(Stmt.If stmt) {
-		if (this.isTruthy(this.evaluate(stmt.condition)))
-			this.execute(stmt.thenBranch);
-		else if (stmt.elseBranch != null)
-			this.execute(stmt.elseBranch);
-
-		return null;
-	}
-
-	@Override
-	public Void visitWhileStmt(Stmt.While stmt) {
-		while (this.isTruthy(this.evaluate(stmt.condition)))
-			this.execute(stmt.body);
-
-		return null;
-	}
-
-	private Object evaluate(Expr expr) {
-		return expr.accept(this);
-	}
-
-	@Override
-	public Object visitAssignExpr(Expr.Assign expr) {
-		Object value = this.evaluate(expr.value);
-
-		Integer distance = this.locals.get(expr);
-		if (distance != null) {
-			this.environment.assignAt(distance, expr.name, value);
-		} else {
-			this.globals.assign(expr.name, value);
-		}
-
-		return value;
-	}
-
-	@Override
-	public Object visitLiteralExpr(Expr.Literal expr) {
-		return expr.value;
-	}
-
-	@Override
-	public Object visitGroupingExpr(Expr.Grouping expr) {
-		return this.evaluate(expr.expression);
-	}
-
-	@Override
-	public Object visitVariableExpr(Expr.Variable expr) {
-		return this.lookupVariable(expr.name, expr);
-	}
-
-	@Override
-	public Object visitUnaryExpr(Expr.Unary expr) {
-		Object right = this.evaluate(expr.right);
-
-		return switch (expr.operator.type) {
-			case BANG -> !this.isTruthy(right);
-			case MINUS -> {
-				this.checkNumberOperand(expr.operator, right);
-				yield -(double) right;
-			}
-			default ->
-				// unreachable
-				null;
-		};
-	}
-
-	@Override
-	public Object visitBinaryExpr(Expr.Binary expr) {
-		Object left = this.evaluate(expr.left);
-		Object right = this.evaluate(expr.right);
-
-		switch (expr.operator.type) {
-		case EQUAL_EQUAL:
-			return this.isEqual(left, right);
-		case BANG_EQUAL:
-			return !this.isEqual(left, right);
-		case GREATER:
-			this.checkNumberOperands(expr.operator, left, right);
-			return (double) left > (double) right;
-		case GREATER_EQUAL:
-			this.checkNumberOperands(expr.operator, left, right);
-			return (double) left >= (double) right;
-		case LESS:
-			this.checkNumberOperands(expr.operator, left, right);
-			return (double) left < (double) right;
-		case LESS_EQUAL:
-			this.checkNumberOperands(expr.operator, left, right);
-			return (double) left <= (double) right;
-		case PLUS:
-			if (left instanceof Double && right instanceof Double) {
-				return (double) left + (double) right;
-			}
-			if (left instanceof String && right instanceof String) {
-				return left + (String) right;
-			}
-			throw new RuntimeError(expr.operator,
-				"All operands must be either numbers or strings."
-			);
-		case MINUS:
-			this.checkNumberOperands(expr.operator, left, right);
-			return (double) left - (double) right;
-		case SLASH:
-			this.checkNumberOperands(expr.operator, left, right);
-			return (double) left / (double) right;
-		case STAR:
-			this.checkNumberOperands(expr.operator, left, right);
-			return (double) left * (double) right;
-		case STAR_STAR:
-			this.checkNumberOperands(expr.operator, left, right);
-			return Math.pow((double) left, (double) right);
-		case PERCENT:
-			this.checkNumberOperands(expr.operator, left, right);
-			return (double) left % (double) right;
-		default:
-			// unreachable
-			return null;
-		}
-	}
-
-	@Override
-	public Object visitLogicalExpr(Expr.Logical expr) {
-		Object left = this.evaluate(expr.left);
-
-		if (expr.operator.type == TokenType.OR) {
-			if (this.isTruthy(left))
-				return left;
-		} else if (expr.operator.type == TokenType.AND) {
-			if (!this.isTruthy(left))
-				return left;
-		}
-
-		return this.evaluate(expr.right);
-	}
-
-	@Override
-	public Object visitCallExpr(Expr.Call expr) {
-		Object callee = this.evaluate(expr.callee);
-		if (!(callee instanceof LoxCallable function)) {
-			throw new RuntimeError(expr.paren, "Can only call functions and classes.");
-		}
-
-		List<Object> arguments = new ArrayList<>();
-		for (Expr argument : expr.arguments) {
-			arguments.add(this.evaluate(argument));
-		}
-
-		if (arguments.size() != function.arity()) {
-			throw new RuntimeError(expr.paren,
-				"Expected " + function.arity() + "arguments but got " + arguments.size()
-			);
-		}
-		return function.call(this, arguments);
-	}
-
-	@Override
-	public Object visitGetExpr(Expr.Get expr) {
-		Object obj = this.evaluate(expr.object);
-		if (obj instanceof LoxInstance)
-			return ((LoxInstance) obj).get(expr.name);
-
-		throw new RuntimeError(expr.name, "Only instances have properties.");
-	}
-
-	@Override
-	public Object visitSetExpr(Expr.Set expr) {
-		Object obj = this.evaluate(expr.object);
-		if (!(obj instanceof LoxInstance))
-			throw new RuntimeError(expr.name, "Only instances have fields.");
-
-		Object value = this.evaluate(expr.value);
-		((LoxInstance) obj).set(expr.name, value);
-
-		return value;
-	}
-
-	@Override
-	public Object visitThisExpr(Expr.This expr) {
-		return this.lookupVariable(expr.keyword, expr);
-	}
-
-	public Object visitSuperExpr(Expr.Super expr) {
-		var distance = this.locals.get(expr);
-		var super_ = (LoxClass)this.environment.getAt(distance, "super");
-		var object = (LoxInstance)this.environment.getAt(distance - 1, "this");
-		var method = super_.findMethod(expr.method.lexeme);
-		return method.bind(object);
-	}
-
-	private Object lookupVariable(Token name, Expr expr) {
-		Integer distance = this.locals.get(expr);
-		if (distance != null) {
-			return this.environment.getAt(distance, name);
-		} else {
-			return this.environment.get(name);
-		}
-	}
-
-	private void checkNumberOperand(Token operator, Object operand) {
-		if (operand instanceof Double)
-			return;
-		throw new RuntimeError(operator, "Operand must be a number.");
-	}
-
-	private boolean isTruthy(Object object) {
-		if (object == null)
-			return false;
-		if (object instanceof Boolean)
-			return (boolean) object;
-		return true;
-	}
-
-	private void checkNumberOperands(Token operator, Object left, Object right) {
-		if (left instanceof Double && right instanceof Double)
-			return;
-		throw new RuntimeError(operator, "Operands must be numbers.");
-	}
-
-	private boolean isEqual(Object left, Object right) {
-		if (left == null && right == null)
-			return true;
-		if (left == null)
-			return false;
-
-		return left.equals(right);
-	}
-
-	private String stringify(Object object) {
-		if (object == null)
-			return "nil";
-
-		if (object instanceof Double) {
-			String text = object.toString();
-			if (text.endsWith(".0")) {
-				text = text.substring(0, text.length() - 2);
-			}
-			return text;
-		}
-
-		return object.toString();
-	}
+package com.craftinginterpreters.lox;
+
+import java.io.UncheckedIOException;
+import java.lang.Math;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+	// natives, shared by the global scopes of the program and its modules
+	final Environment builtins = new Environment();
+	final Environment globals = Environment.global(this.builtins);
+	final Console console;
+	private final List<String> scriptArgs;
+	// where relative paths lead; the daemon runs scripts for clients in
+	// other directories
+	private Path directory = Paths.get("").toAbsolutePath();
+	// timers and I/O callbacks, run once the top level is done
+	final EventLoop events = new EventLoop();
+	// what the resolver worked out, from here to suspending; parallel workers
+	// share it with the interpreter that made them
+	private final Map<Expr, Integer> locals;
+	// blocks that run in the enclosing environment, having no names of their own
+	private final Set<Stmt.Block> flatBlocks;
+	// loops whose body scope can be one environment for all iterations
+	private final Map<Stmt, Stmt.Block> loopFrames;
+	// counted loops that have to store their counter in the loop variable
+	private final Set<Stmt.Counted> storedCounters;
+	// canonical for loops that run as the while they desugar to
+	private final Set<Stmt.Counted> generalLoops;
+	// declarations of variables that closures share rather than copy
+	private final Set<Token> cells;
+	private final Map<Stmt.Function, Captures> captures;
+	// functions whose result depends only on their arguments
+	private final Set<Stmt.Function> memoized;
+	// functions that yield, and the statements in them a yield is nested in
+	private final Set<Stmt.Function> generators;
+	private final Set<Stmt> suspending;
+	private final Map<Stmt.Import, ModuleCache.Module> imports = new HashMap<>();
+	// modules run so far, each once however many files import it
+	private final Map<ModuleCache.Module, LoxModule> modules = new HashMap<>();
+	private Environment environment = globals;
+	private Budget budget = null;
+	// ticks and allocations left in this slice of the budget
+	private long fuel = Long.MAX_VALUE;
+	private long allocations = Long.MAX_VALUE;
+	private boolean failed = false;
+	// in a parallel worker, the objects made up to this point are shared
+	// with the caller and can't be changed (see Mutable)
+	private long sharedBefore = -1;
+	// the actor this interpreter runs, made on demand for the script itself
+	private LoxActor self = null;
+	private boolean actor = false;
+	private String failure = null;
+	// the actors started by the script and its actors, stopped when it ends
+	private Queue<LoxActor> actors = new ConcurrentLinkedQueue<>();
+	// the arguments of the inlined call being evaluated (see Inliner)
+	private Object[] slots = null;
+
+	Interpreter() {
+		this(List.of(), Console.standard(Console.Flush.LINE));
+	}
+
+	Interpreter(List<String> scriptArgs, Console console) {
+		this.console = console;
+		this.scriptArgs = scriptArgs;
+		this.locals = new HashMap<>();
+		this.flatBlocks = new HashSet<>();
+		this.loopFrames = new HashMap<>();
+		this.storedCounters = new HashSet<>();
+		this.generalLoops = new HashSet<>();
+		this.cells = new HashSet<>();
+		this.captures = new HashMap<>();
+		this.memoized = new HashSet<>();
+		this.generators = new HashSet<>();
+		this.suspending = new HashSet<>();
+
+		this.builtins.define("clock", new Native("clock", 0) {
+			@Override
+			public Object call0(Interpreter intp) {
+				return Numbers.box(System.currentTimeMillis() / 1000.0);
+			}
+		});
+
+		this.builtins.define("puts", new Native("puts", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object arg) {
+				intp.console.println(stringify(arg));
+				return null;
+			}
+		});
+
+		this.builtins.define("gets", new Native("gets", 0) {
+			@Override
+			public Object call0(Interpreter intp) {
+				try {
+					return intp.console.readLine(intp.budget);
+				} catch (UncheckedIOException e) {
+					throw new NativeError("Can't read input: " + e.getCause().getMessage());
+				}
+			}
+		});
+
+		this.builtins.define("argc", new Native("argc", 0) {
+			@Override
+			public Object call0(Interpreter intp) {
+				return Numbers.box(scriptArgs.size());
+			}
+		});
+
+		this.builtins.define("argv", new Native("argv", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object arg) {
+				if (!(arg instanceof Integer index))
+					return null;
+				if (index < 0 || index >= scriptArgs.size())
+					return null;
+				return scriptArgs.get(index);
+			}
+		});
+
+		this.builtins.define("toString", new Native("toString", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object arg) {
+				return stringify(arg);
+			}
+		});
+
+		this.builtins.define("toNumber", new Native("toNumber", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object arg) {
+				if (arg instanceof String)
+					return Scanner.toNumber((String) arg);
+				else if (Numbers.isNumber(arg))
+					return arg;
+				return Double.NaN;
+			}
+		});
+
+		this.builtins.define("memoize", new Native("memoize", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object function) {
+				if (function instanceof MemoizedFunction)
+					return function;
+				if (!(function instanceof LoxCallable callable))
+					throw new NativeError("Can only memoize functions.");
+				return new MemoizedFunction(callable);
+			}
+		});
+
+		this.builtins.define("memoStats", new Native("memoStats", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object function) {
+				if (!(function instanceof MemoizedFunction memo))
+					return null;
+				var stats = new LoxMap();
+				stats.put("hits", Numbers.box(memo.hits));
+				stats.put("misses", Numbers.box(memo.misses));
+				stats.put("size", Numbers.box(memo.size()));
+				stats.put("capacity", Numbers.box(MemoizedFunction.CAPACITY));
+				return stats;
+			}
+		});
+
+		this.builtins.define("open", new Native("open", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object path) {
+				intp.allocate();
+				return LoxFile.open(intp.directory, path);
+			}
+		});
+
+		this.builtins.define("readFile", new Native("readFile", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object path) {
+				return LoxFile.readFile(intp.directory, path, intp.budget);
+			}
+		});
+
+		this.builtins.define("writeFile", new Native("writeFile", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object path, Object text) {
+				LoxFile.writeFile(intp.directory, path, text, false);
+				return null;
+			}
+		});
+
+		this.builtins.define("appendFile", new Native("appendFile", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object path, Object text) {
+				LoxFile.writeFile(intp.directory, path, text, true);
+				return null;
+			}
+		});
+
+		this.builtins.define("readFileAsync", new Native("readFileAsync", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object path, Object callback) {
+				intp.events().submit(() -> LoxFile.readFile(intp.directory, path, null), callback);
+				return null;
+			}
+		});
+
+		this.builtins.define("writeFileAsync", new Native("writeFileAsync", 3) {
+			@Override
+			public Object call3(Interpreter intp, Object path, Object text, Object callback) {
+				intp.events().submit(() -> {
+					LoxFile.writeFile(intp.directory, path, text, false);
+					return null;
+				}, callback);
+				return null;
+			}
+		});
+
+		this.builtins.define("appendFileAsync", new Native("appendFileAsync", 3) {
+			@Override
+			public Object call3(Interpreter intp, Object path, Object text, Object callback) {
+				intp.events().submit(() -> {
+					LoxFile.writeFile(intp.directory, path, text, true);
+					return null;
+				}, callback);
+				return null;
+			}
+		});
+
+		this.builtins.define("setTimeout", new Native("setTimeout", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object callback, Object delay) {
+				return intp.events().setTimer(callback, delay, false);
+			}
+		});
+
+		this.builtins.define("setInterval", new Native("setInterval", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object callback, Object interval) {
+				return intp.events().setTimer(callback, interval, true);
+			}
+		});
+
+		this.builtins.define("clearTimer", new Native("clearTimer", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object id) {
+				intp.events().clearTimer(id);
+				return null;
+			}
+		});
+
+		this.builtins.define("parallelMap", new Native("parallelMap", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object function, Object items) {
+				return Parallel.map(intp, function, items);
+			}
+		});
+
+		this.builtins.define("parallelReduce", new Native("parallelReduce", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object function, Object items) {
+				return Parallel.reduce(intp, function, items);
+			}
+		});
+
+		this.builtins.define("actor", new Native("actor", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object function) {
+				return LoxActor.start(intp, function);
+			}
+		});
+
+		this.builtins.define("send", new Native("send", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object actor, Object message) {
+				if (!(actor instanceof LoxActor to))
+					throw new NativeError("Can only send to an actor.");
+				to.send(message);
+				return null;
+			}
+		});
+
+		this.builtins.define("receive", new Native("receive", 0) {
+			@Override
+			public Object call0(Interpreter intp) {
+				return intp.self().receive(intp);
+			}
+		});
+
+		this.builtins.define("self", new Native("self", 0) {
+			@Override
+			public Object call0(Interpreter intp) {
+				return intp.self();
+			}
+		});
+
+		this.builtins.define("Float64Array", new Native("Float64Array", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object arg) {
+				intp.allocate();
+				return LoxFloat64Array.create(arg);
+			}
+
+			@Override
+			public String toString() {
+				return "<class Float64Array>";
+			}
+		});
+
+		this.builtins.define("vecAdd", new Native("vecAdd", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object a, Object b) {
+				var x = LoxFloat64Array.cast(a);
+				var y = LoxFloat64Array.cast(b);
+				var out = LoxFloat64Array.output(x, y);
+				Float64Kernels.INSTANCE.add(x.values, y.values, out);
+				return new LoxFloat64Array(out);
+			}
+		});
+
+		this.builtins.define("vecSub", new Native("vecSub", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object a, Object b) {
+				var x = LoxFloat64Array.cast(a);
+				var y = LoxFloat64Array.cast(b);
+				var out = LoxFloat64Array.output(x, y);
+				Float64Kernels.INSTANCE.sub(x.values, y.values, out);
+				return new LoxFloat64Array(out);
+			}
+		});
+
+		this.builtins.define("vecMul", new Native("vecMul", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object a, Object b) {
+				var x = LoxFloat64Array.cast(a);
+				var y = LoxFloat64Array.cast(b);
+				var out = LoxFloat64Array.output(x, y);
+				Float64Kernels.INSTANCE.mul(x.values, y.values, out);
+				return new LoxFloat64Array(out);
+			}
+		});
+
+		this.builtins.define("vecDiv", new Native("vecDiv", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object a, Object b) {
+				var x = LoxFloat64Array.cast(a);
+				var y = LoxFloat64Array.cast(b);
+				var out = LoxFloat64Array.output(x, y);
+				Float64Kernels.INSTANCE.div(x.values, y.values, out);
+				return new LoxFloat64Array(out);
+			}
+		});
+
+		this.builtins.define("vecScale", new Native("vecScale", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object a, Object factor) {
+				var x = LoxFloat64Array.cast(a);
+				if (!Numbers.isNumber(factor))
+					throw new NativeError("Scale factor must be a number.");
+				var out = new double[x.values.length];
+				Float64Kernels.INSTANCE.scale(x.values, Numbers.value(factor), out);
+				return new LoxFloat64Array(out);
+			}
+		});
+
+		this.builtins.define("vecDot", new Native("vecDot", 2) {
+			@Override
+			public Object call2(Interpreter intp, Object a, Object b) {
+				var x = LoxFloat64Array.cast(a);
+				var y = LoxFloat64Array.cast(b);
+				LoxFloat64Array.checkLengths(x, y);
+				return Numbers.box(Float64Kernels.INSTANCE.dot(x.values, y.values));
+			}
+		});
+
+		this.builtins.define("vecSum", new Native("vecSum", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object a) {
+				return Numbers.box(Float64Kernels.INSTANCE.sum(LoxFloat64Array.cast(a).values));
+			}
+		});
+
+		this.builtins.define("vecMin", new Native("vecMin", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object a) {
+				var x = LoxFloat64Array.cast(a);
+				return Numbers.box(LoxFloat64Array.nonEmpty(x, Float64Kernels.INSTANCE.min(x.values)));
+			}
+		});
+
+		this.builtins.define("vecMax", new Native("vecMax", 1) {
+			@Override
+			public Object call1(Interpreter intp, Object a) {
+				var x = LoxFloat64Array.cast(a);
+				return Numbers.box(LoxFloat64Array.nonEmpty(x, Float64Kernels.INSTANCE.max(x.values)));
+			}
+		});
+
+		this.builtins.define("Object", new LoxClass(
+			"Object",
+			null,
+			new HashMap<>()
+		));
+
+		this.builtins.define("Data", new LoxClass(
+				"Data",
+				null,
+				new HashMap<>()
+		));
+
+		this.builtins.define("List", new Native("List", 0) {
+			@Override
+			public Object call0(Interpreter intp) {
+				intp.allocate();
+				return new LoxList();
+			}
+
+			@Override
+			public String toString() {
+				return "<class List>";
+			}
+		});
+
+		this.builtins.define("Map", new Native("Map", 0) {
+			@Override
+			public Object call0(Interpreter intp) {
+				intp.allocate();
+				return new LoxMap();
+			}
+
+			@Override
+			public String toString() {
+				return "<class Map>";
+			}
+		});
+	}
+
+	// A parallel worker. It shares the caller's console, budget and what the
+	// resolver worked out, which nothing changes while the caller waits for
+	// its workers, and reaches natives through the caller's globals like the
+	// functions it runs.
+	private Interpreter(Interpreter caller, long sharedBefore) {
+		this.console = caller.console;
+		this.scriptArgs = caller.scriptArgs;
+		this.directory = caller.directory;
+		this.locals = caller.locals;
+		this.flatBlocks = caller.flatBlocks;
+		this.loopFrames = caller.loopFrames;
+		this.storedCounters = caller.storedCounters;
+		this.generalLoops = caller.generalLoops;
+		this.cells = caller.cells;
+		this.captures = caller.captures;
+		this.memoized = caller.memoized;
+		this.generators = caller.generators;
+		this.suspending = caller.suspending;
+		this.sharedBefore = sharedBefore;
+		this.budget = caller.budget == null ? null : new Budget(caller.budget);
+		// the first tick asks the budget for a slice of its own
+		this.fuel = caller.budget == null ? Long.MAX_VALUE : 0;
+		this.allocations = caller.budget == null ? Long.MAX_VALUE : 0;
+	}
+
+	Interpreter worker(long sharedBefore) {
+		return new Interpreter(this, sharedBefore);
+	}
+
+	// An interpreter for an actor, with the standard natives and globals of
+	// its own. It shares the console and what the resolver worked out, and
+	// runs under a budget drawing on the script's.
+	Interpreter isolate(LoxActor self, Budget budget) {
+		var isolate = new Interpreter(this.scriptArgs, this.console);
+		isolate.adopt(this);
+		isolate.directory = this.directory;
+		isolate.self = self;
+		isolate.actor = true;
+		isolate.actors = this.actors;
+		isolate.budget = budget;
+		isolate.fuel = 0;
+		isolate.allocations = 0;
+		this.actors.add(self);
+		return isolate;
+	}
+
+	// a budget for an actor, which can be stopped by itself
+	Budget actorBudget() {
+		return this.budget == null ? new Budget() : new Budget(this.budget);
+	}
+
+	// once the script is done, stops the actors still running and reports
+	// those that failed with no one asking why, unless the script failed
+	// itself and has said why already
+	void stopActors() {
+		for (var actor : this.actors) {
+			actor.stop();
+		}
+		if (this.failed)
+			return;
+		for (var actor : this.actors) {
+			var failure = actor.unreported();
+			if (failure != null)
+				this.fail("Actor " + actor.name() + " failed: " + failure);
+		}
+		this.console.flush();
+	}
+
+	void workIn(Path directory) {
+		this.directory = directory;
+	}
+
+	Path file(String path) {
+		return this.directory.resolve(path);
+	}
+
+	LoxActor self() {
+		if (this.self == null)
+			this.self = new LoxActor("script");
+		return this.self;
+	}
+
+	boolean isShared(Mutable state) {
+		return state.made <= this.sharedBefore;
+	}
+
+	// for natives that change an object
+	void change(Mutable state) {
+		if (this.isShared(state))
+			throw new NativeError("A parallel function can't change a shared object.");
+	}
+
+	// timers and I/O call back on the script's own thread
+	EventLoop events() {
+		if (this.sharedBefore >= 0)
+			throw new NativeError("A parallel function can't set timers or start I/O.");
+		return this.events;
+	}
+
+	void interpret(List<Stmt> statements) {
+		try {
+			if (this.budget != null)
+				this.budget.start();
+			for (Stmt statement : statements) {
+				this.execute(statement);
+			}
+		} catch (RuntimeError e) {
+			this.runtimeError(e);
+		} catch (Budget.Exceeded e) {
+			this.fail(e.getMessage());
+		} finally {
+			this.console.flush();
+		}
+	}
+
+	// calls a function for the event loop, where an error in it stops the
+	// script like one at the top level
+	void callBack(LoxCallable callback, Object... args) {
+		try {
+			this.tick();
+			callback.call(this, args);
+		} catch (NativeError e) {
+			// a native has no call site to blame
+			this.fail(e.getMessage());
+		} catch (RuntimeError e) {
+			this.runtimeError(e);
+		} catch (Budget.Exceeded e) {
+			this.fail(e.getMessage());
+		} finally {
+			this.console.flush();
+		}
+	}
+
+	// whether the program stopped on an error
+	boolean failed() {
+		return this.failed;
+	}
+
+	void limit(Budget budget) {
+		this.budget = budget;
+		this.fuel = budget.grant();
+		this.allocations = 0;
+	}
+
+	// the budget the script runs under, or null
+	Budget budget() {
+		return this.budget;
+	}
+
+	// whether the script may go on after the event loop waited; one that
+	// was cancelled or ran out of time meanwhile stops like a failed one
+	boolean withinBudget() {
+		if (this.budget == null)
+			return true;
+		try {
+			this.budget.check();
+			return true;
+		} catch (Budget.Exceeded e) {
+			this.fail(e.getMessage());
+			return false;
+		}
+	}
+
+	// counted at loop back-edges and calls; the budget is only looked at
+	// once the slice runs out
+	void tick() {
+		if (--this.fuel < 0)
+			this.fuel = this.budget == null ? Long.MAX_VALUE : this.budget.grant() - 1;
+	}
+
+	// counted for every instance, list, map, array, closure and string made
+	void allocate() {
+		if (--this.allocations < 0)
+			this.allocations = this.budget == null ? Long.MAX_VALUE : this.budget.grantAllocations() - 1;
+	}
+
+	// hands back what is left of the allocation slice of a worker or an
+	// actor that is done, so the script can still use it
+	void refundAllocations() {
+		if (this.budget != null && this.allocations > 0)
+			this.budget.refundAllocations(this.allocations);
+		this.allocations = 0;
+	}
+
+	private void runtimeError(RuntimeError error) {
+		this.fail(error.getMessage() + "\n[line " + error.token.line + "]");
+	}
+
+	// a script's errors go to its console; an actor's are kept for whoever
+	// joins it
+	private void fail(String message) {
+		this.failed = true;
+		if (this.actor)
+			this.failure = message;
+		else
+			this.console.error(message);
+	}
+
+	// what the actor this interpreter runs stopped on, or null
+	String failure() {
+		return this.failure;
+	}
+
+	// every statement runs through here, which is where a debugger looks in
+	void execute(Stmt statement) {
+		statement.accept(this);
+	}
+
+	// runs a function's body in its frame
+	void executeFunction(LoxFunction function, List<Stmt> body, Environment frame) {
+		this.executeBlock(body, frame);
+	}
+
+	Environment environment() {
+		return this.environment;
+	}
+
+	void resolve(Expr expr, int depth) {
+		this.locals.put(expr, depth);
+	}
+
+	boolean isLocal(Expr expr) {
+		return this.locals.containsKey(expr);
+	}
+
+	void flatten(Stmt.Block block) {
+		this.flatBlocks.add(block);
+	}
+
+	void reuseFrame(Stmt loop, Stmt.Block body) {
+		this.loopFrames.put(loop, body);
+	}
+
+	void storeCounter(Stmt.Counted loop) {
+		this.storedCounters.add(loop);
+	}
+
+	void generalLoop(Stmt.Counted loop) {
+		this.generalLoops.add(loop);
+	}
+
+	void cell(Token declaration) {
+		this.cells.add(declaration);
+	}
+
+	Captures captures(Stmt.Function function) {
+		return this.captures.get(function);
+	}
+
+	void capture(Stmt.Function function, Captures captures) {
+		this.captures.put(function, captures);
+	}
+
+	void memoize(Stmt.Function function) {
+		this.memoized.add(function);
+	}
+
+	void generator(Stmt.Function function) {
+		this.generators.add(function);
+	}
+
+	void suspend(Stmt stmt) {
+		this.suspending.add(stmt);
+	}
+
+	void link(Stmt.Import stmt, ModuleCache.Module module) {
+		this.imports.put(stmt, module);
+	}
+
+	// takes on what the resolver worked out for a module compiled elsewhere
+	void adopt(Interpreter resolution) {
+		this.locals.putAll(resolution.locals);
+		this.flatBlocks.addAll(resolution.flatBlocks);
+		this.loopFrames.putAll(resolution.loopFrames);
+		this.storedCounters.addAll(resolution.storedCounters);
+		this.generalLoops.addAll(resolution.generalLoops);
+		this.cells.addAll(resolution.cells);
+		this.captures.putAll(resolution.captures);
+		this.memoized.addAll(resolution.memoized);
+		this.generators.addAll(resolution.generators);
+		this.suspending.addAll(resolution.suspending);
+	}
+
+	// for generators, which keep their own environments between steps
+	Object evaluate(Expr expr, Environment environment) {
+		Environment previous = this.environment;
+		try {
+			this.environment = environment;
+			return this.evaluate(expr);
+		} finally {
+			this.environment = previous;
+		}
+	}
+
+	void execute(Stmt statement, Environment environment) {
+		Environment previous = this.environment;
+		try {
+			this.environment = environment;
+			this.execute(statement);
+		} finally {
+			this.environment = previous;
+		}
+	}
+
+	void declare(Environment environment, Token name, Object value) {
+		environment.define(name, this.cells.contains(name) ? new Cell(value) : value);
+	}
+
+	boolean isFlat(Stmt.Block block) {
+		return this.flatBlocks.contains(block);
+	}
+
+	// whether a generator has to step through the statement to stop in it
+	boolean suspends(Stmt stmt) {
+		return this.suspending.contains(stmt);
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		this.evaluate(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		Object value = this.evaluate(stmt.expression);
+		this.console.println(stringify(value));
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		Object value = null;
+		if (stmt.initializer != null) {
+			value = this.evaluate(stmt.initializer);
+		}
+		if (stmt.guard != null)
+			stmt.guard.guard(stmt.name, "Variable '" + stmt.name.lexeme + "' must hold a", value);
+
+		this.declare(stmt.name, value);
+		return null;
+	}
+
+	private void declare(Token name, Object value) {
+		this.declare(this.environment, name, value);
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		if (this.flatBlocks.contains(stmt)) {
+			for (Stmt statement : stmt.statements) {
+				this.execute(statement);
+			}
+			return null;
+		}
+
+		this.executeBlock(stmt.statements, new Environment(this.environment));
+		return null;
+	}
+
+	void executeBlock(List<Stmt> statements, Environment environment) {
+		Environment previous = this.environment;
+		try {
+			this.environment = environment;
+			for (Stmt statement : statements) {
+				this.execute(statement);
+			}
+		} finally {
+			this.environment = previous;
+		}
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		// declared first, so a closure that calls it can take its cell
+		this.declare(stmt.name, null);
+		var function = this.function(stmt, false, null);
+		this.environment.assign(stmt.name, this.memoized.contains(stmt) ? new MemoizedFunction(function) : function);
+		return null;
+	}
+
+	// a function made here, closing over just the variables it uses
+	private LoxFunction function(Stmt.Function declaration, boolean isInitializer, LoxClass class_) {
+		this.allocate();
+		var captures = this.captures.get(declaration);
+		var closure = this.environment.globals;
+		if (captures.names.length > 0) {
+			closure = new Environment(closure);
+			for (var i = 0; i < captures.names.length; i++) {
+				var name = captures.names[i];
+				closure.define(name, this.environment.capture(captures.distances[i], name));
+			}
+		}
+		var isGenerator = this.generators.contains(declaration);
+		return new LoxFunction(declaration, closure, captures.cellParams, isInitializer, isGenerator, class_);
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		Object value = null;
+		if (stmt.value != null)
+			value = this.evaluate(stmt.value);
+		throw new Return(value);
+	}
+
+	@Override
+	public Void visitYieldStmt(Stmt.Yield stmt) {
+		// only ever reached by a LoxGenerator stepping through its body
+		throw new IllegalStateException("yield outside a generator");
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		this.declare(stmt.name, null);
+
+		LoxClass super_ = null;
+		if (stmt.super_ != null) {
+			var superResult = this.evaluate(stmt.super_);
+			if (!(superResult instanceof LoxClass)) {
+				this.runtimeError(new RuntimeError(
+					stmt.super_.name,
+					"Superclass must be a class."
+				));
+			} else {
+				super_ = (LoxClass) superResult;
+			}
+		}
+
+		var class_ = new LoxClass(stmt.name.lexeme, super_, new HashMap<>());
+
+		for (var method : stmt.methods) {
+			var isInitializer = method.name.lexeme.equals("init");
+			class_.methods.put(method.name.lexeme, this.function(method, isInitializer, class_));
+		}
+
+		this.environment.assign(stmt.name, class_);
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		var compiled = this.imports.get(stmt);
+		var module = this.modules.get(compiled);
+		if (module == null) {
+			// registered before it runs, so an import cycle sees the module
+			// as far as it has got instead of running it again
+			module = new LoxModule(compiled.toString(), Environment.global(this.builtins));
+			this.modules.put(compiled, module);
+			this.executeBlock(compiled.statements, module.globals);
+		}
+
+		this.declare(stmt.name, module);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		if (this.isTruthy(this.evaluate(stmt.condition)))
+			this.execute(stmt.thenBranch);
+		else if (stmt.elseBranch != null)
+			this.execute(stmt.elseBranch);
+
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		this.whileLoop(stmt, stmt.condition, stmt.body, null);
+		return null;
+	}
+
+	private void whileLoop(Stmt loop, Expr condition, Stmt body, Expr increment) {
+		var scope = this.loopFrames.get(loop);
+		var frame = scope == null ? null : new Environment(this.environment);
+		while (this.isTruthy(this.evaluate(condition))) {
+			this.tick();
+			this.loopBody(body, scope, frame);
+			if (increment != null)
+				this.evaluate(increment);
+		}
+	}
+
+	// one iteration, in the frame made for the loop's body scope if it has
+	// one. Each iteration redefines the body's variables before using them, so
+	// the previous iteration's values are never seen.
+	private void loopBody(Stmt body, Stmt.Block scope, Environment frame) {
+		if (scope == null) {
+			this.execute(body);
+			return;
+		}
+
+		this.executeBlock(scope.statements, frame);
+		if (scope != body) {
+			var rest = ((Stmt.Block) body).statements;
+			for (var i = 1; i < rest.size(); i++) {
+				this.execute(rest.get(i));
+			}
+		}
+	}
+
+	@Override
+	public Void visitCountedStmt(Stmt.Counted stmt) {
+		var previous = this.environment;
+		try {
+			if (stmt.condition == null) {
+				this.rangeLoop(stmt);
+				return null;
+			}
+
+			this.environment = new Environment(previous);
+			var start = this.evaluate(stmt.start);
+			if (stmt.guard != null)
+				stmt.guard.guard(stmt.name, "Variable '" + stmt.name.lexeme + "' must hold a", start);
+			this.declare(stmt.name, start);
+			if (this.generalLoops.contains(stmt) || !Numbers.isNumber(start))
+				this.whileLoop(stmt, stmt.condition, stmt.body, stmt.increment);
+			else
+				this.countedLoop(stmt, Numbers.value(start));
+		} finally {
+			this.environment = previous;
+		}
+		return null;
+	}
+
+	// for (var i = start; i < end; i = i + step), with i kept unboxed and only
+	// stored in the variable when something reads it
+	private void countedLoop(Stmt.Counted stmt, double counter) {
+		var scope = this.loopFrames.get(stmt);
+		var frame = scope == null ? null : new Environment(this.environment);
+		var store = this.storedCounters.contains(stmt);
+		var step = Numbers.value(((Expr.Literal) stmt.step).value);
+
+		for (;; counter += step) {
+			if (store)
+				this.environment.define(stmt.name, Numbers.box(counter));
+			var end = this.evaluate(stmt.end);
+			if (!Numbers.isNumber(end))
+				throw new RuntimeError(stmt.operator, "Operands must be numbers.");
+			if (!compare(stmt.operator.type, counter, Numbers.value(end)))
+				break;
+			this.tick();
+			this.loopBody(stmt.body, scope, frame);
+		}
+	}
+
+	private static boolean compare(TokenType operator, double left, double right) {
+		return switch (operator) {
+			case LESS -> left < right;
+			case LESS_EQUAL -> left <= right;
+			case GREATER -> left > right;
+			default -> left >= right;
+		};
+	}
+
+	// for (var i in start..end step by): end is left out, and every iteration
+	// gets a fresh i that the body can change without upsetting the count
+	private void rangeLoop(Stmt.Counted stmt) {
+		var start = this.evaluate(stmt.start);
+		var end = this.evaluate(stmt.end);
+		var step = stmt.step == null ? (Object) 1 : this.evaluate(stmt.step);
+		if (!Numbers.isNumber(start) || !Numbers.isNumber(end))
+			throw new RuntimeError(stmt.operator, "Range bounds must be numbers.");
+		if (!Numbers.isNumber(step) || !(Numbers.value(step) > 0 || Numbers.value(step) < 0))
+			throw new RuntimeError(stmt.operator, "Range step must be a non-zero number.");
+		var from = Numbers.value(start);
+		var to = Numbers.value(end);
+		var by = Numbers.value(step);
+
+		this.environment = new Environment(this.environment);
+		var scope = this.loopFrames.get(stmt);
+		var frame = scope == null ? null : new Environment(this.environment);
+		var store = this.storedCounters.contains(stmt);
+		for (double counter = from; by > 0 ? counter < to : counter > to; counter += by) {
+			if (store)
+				this.declare(stmt.name, Numbers.box(counter));
+			this.tick();
+			this.loopBody(stmt.body, scope, frame);
+		}
+	}
+
+	@Override
+	public Void visitDataStmt(Stmt.Data stmt) {
+		var fields = new String[stmt.fields.size()];
+		for (var i = 0; i < fields.length; i++) {
+			fields[i] = stmt.fields.get(i).lexeme;
+		}
+		this.declare(stmt.name, new LoxDataClass(stmt.name.lexeme, fields));
+		return null;
+	}
+
+	@Override
+	public Void visitEachStmt(Stmt.Each stmt) {
+		var items = this.evaluate(stmt.iterable);
+		var previous = this.environment;
+		try {
+			this.environment = new Environment(previous);
+			var scope = this.loopFrames.get(stmt);
+			var frame = scope == null ? null : new Environment(this.environment);
+			if (items instanceof LoxList list) {
+				// a list may grow or shrink while it is looped over
+				for (var i = 0; i < list.size(); i++) {
+					this.declare(stmt.name, list.get(i));
+					this.tick();
+					this.loopBody(stmt.body, scope, frame);
+				}
+			} else if (items instanceof LoxGenerator generator) {
+				while (generator.hasNext(this, stmt.keyword)) {
+					this.declare(stmt.name, generator.next(this, stmt.keyword));
+					this.tick();
+					this.loopBody(stmt.body, scope, frame);
+				}
+			} else if (items instanceof LoxFile file) {
+				try {
+					String line;
+					while ((line = this.nextLine(file, stmt.keyword)) != null) {
+						this.declare(stmt.name, line);
+						this.tick();
+						this.loopBody(stmt.body, scope, frame);
+					}
+				} finally {
+					this.closeFile(file, stmt.keyword);
+				}
+			} else {
+				throw new RuntimeError(stmt.keyword, "Can only loop over a list, a generator or a file.");
+			}
+		} finally {
+			this.environment = previous;
+		}
+		return null;
+	}
+
+	// a file is looped over a line at a time, up to the end of the file
+	String nextLine(LoxFile file, Token keyword) {
+		try {
+			this.change(file);
+			return file.readLine(this.budget);
+		} catch (NativeError e) {
+			throw new RuntimeError(keyword, e.getMessage());
+		}
+	}
+
+	// a file looped over is closed once the loop is done with it, at the end
+	// of the file or on a return or an error, so a long-running daemon doesn't
+	// keep its channel and mapped window until the collector gets to them
+	void closeFile(LoxFile file, Token keyword) {
+		try {
+			file.close();
+		} catch (NativeError e) {
+			throw new RuntimeError(keyword, e.getMessage());
+		}
+	}
+
+	private Object evaluate(Expr expr) {
+		return expr.accept(this);
+	}
+
+	@Override
+	public Object visitAssignExpr(Expr.Assign expr) {
+		Object value = this.evaluate(expr.value);
+		if (expr.guard != null)
+			expr.guard.guard(expr.name, "Variable '" + expr.name.lexeme + "' must hold a", value);
+
+		var global = expr.global;
+		var globals = this.environment.globals;
+		if (global != null && global.binds(globals) && this.sharedBefore < 0) {
+			global.cell.value = value;
+			return value;
+		}
+
+		Integer distance = this.locals.get(expr);
+		if (this.sharedBefore >= 0)
+			this.checkAssign(expr.name, distance);
+		if (distance != null) {
+			this.environment.assignAt(distance, expr.name, value);
+		} else {
+			global = globals.bind(expr.name);
+			// builtins are shared by every file, so assigning to one shadows
+			// it in this file's globals instead
+			if (global.shape >= 0) {
+				globals.define(expr.name, value);
+				global = globals.bind(expr.name);
+			}
+			expr.global = global;
+			global.cell.value = value;
+		}
+
+		return value;
+	}
+
+	// A parallel worker's frames are its own, and closures copy the
+	// variables they capture unless they go in a cell. So only globals and
+	// cells can be shared.
+	private void checkAssign(Token name, Integer distance) {
+		if (distance == null || this.environment.capture(distance, name.lexeme) instanceof Cell cell && this.isShared(cell))
+			throw new RuntimeError(name, "A parallel function can't assign to shared variable '" + name.lexeme + "'.");
+	}
+
+	@Override
+	public Object visitLiteralExpr(Expr.Literal expr) {
+		return expr.value;
+	}
+
+	@Override
+	public Object visitGroupingExpr(Expr.Grouping expr) {
+		return this.evaluate(expr.expression);
+	}
+
+	@Override
+	public Object visitVariableExpr(Expr.Variable expr) {
+		var global = expr.global;
+		var globals = this.environment.globals;
+		if (global != null && global.binds(globals))
+			return global.cell.value;
+
+		Integer distance = this.locals.get(expr);
+		if (distance != null)
+			return this.environment.getAt(distance, expr.name);
+		global = globals.bind(expr.name);
+		expr.global = global;
+		return global.cell.value;
+	}
+
+	@Override
+	public Object visitUnaryExpr(Expr.Unary expr) {
+		if (expr.numeric)
+			return Numbers.box(-this.number(expr.right));
+		Object right = this.evaluate(expr.right);
+
+		return switch (expr.operator.type) {
+			case BANG -> !this.isTruthy(right);
+			case MINUS -> {
+				// -0 and -MIN_VALUE aren't ints
+				if (right instanceof Integer whole && whole != 0 && whole != Integer.MIN_VALUE)
+					yield Numbers.box(-whole);
+				this.checkNumberOperand(expr.operator, right);
+				yield Numbers.box(-Numbers.value(right));
+			}
+			default ->
+				// unreachable
+				null;
+		};
+	}
+
+	@Override
+	public Object visitBinaryExpr(Expr.Binary expr) {
+		if (expr.numeric)
+			return this.numeric(expr);
+		Object left = this.evaluate(expr.left);
+		Object right = this.evaluate(expr.right);
+		if (left instanceof Integer a && right instanceof Integer b)
+			return whole(expr.operator.type, a, b);
+		return this.binary(expr.operator, left, right);
+	}
+
+	private Object binary(Token operator, Object left, Object right) {
+		switch (operator.type) {
+		case EQUAL_EQUAL:
+			return this.isEqual(left, right);
+		case BANG_EQUAL:
+			return !this.isEqual(left, right);
+		case GREATER:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.value(left) > Numbers.value(right);
+		case GREATER_EQUAL:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.value(left) >= Numbers.value(right);
+		case LESS:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.value(left) < Numbers.value(right);
+		case LESS_EQUAL:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.value(left) <= Numbers.value(right);
+		case PLUS:
+			if (Numbers.isNumber(left) && Numbers.isNumber(right)) {
+				return Numbers.box(Numbers.value(left) + Numbers.value(right));
+			}
+			if (left instanceof String && right instanceof String) {
+				this.allocate();
+				return left + (String) right;
+			}
+			throw new RuntimeError(operator,
+				"All operands must be either numbers or strings."
+			);
+		case MINUS:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.box(Numbers.value(left) - Numbers.value(right));
+		case SLASH:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.box(Numbers.value(left) / Numbers.value(right));
+		case STAR:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.box(Numbers.value(left) * Numbers.value(right));
+		case STAR_STAR:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.box(Math.pow(Numbers.value(left), Numbers.value(right)));
+		case PERCENT:
+			this.checkNumberOperands(operator, left, right);
+			return Numbers.box(Numbers.remainder(Numbers.value(left), Numbers.value(right)));
+		default:
+			// unreachable
+			return null;
+		}
+	}
+
+	// both operands whole numbers, worked out on ints as far as the result
+	// allows, with the same results as on doubles
+	private static Object whole(TokenType operator, int left, int right) {
+		return switch (operator) {
+			case EQUAL_EQUAL -> left == right;
+			case BANG_EQUAL -> left != right;
+			case GREATER -> left > right;
+			case GREATER_EQUAL -> left >= right;
+			case LESS -> left < right;
+			case LESS_EQUAL -> left <= right;
+			case PLUS -> Numbers.box((long) left + right);
+			case MINUS -> Numbers.box((long) left - right);
+			case STAR -> {
+				var product = (long) left * right;
+				// 0 times a negative number is -0
+				if (product == 0 && (left < 0 || right < 0))
+					yield -0.0;
+				yield Numbers.box(product);
+			}
+			case SLASH -> Numbers.box((double) left / right);
+			case STAR_STAR -> Numbers.box(Math.pow(left, right));
+			default -> Numbers.box(Numbers.remainder(left, right));
+		};
+	}
+
+	// operands the type checker proved to be numbers, worked out unboxed
+	// and without checking them
+	private Object numeric(Expr.Binary expr) {
+		var left = this.number(expr.left);
+		var right = this.number(expr.right);
+		return switch (expr.operator.type) {
+			case GREATER -> left > right;
+			case GREATER_EQUAL -> left >= right;
+			case LESS -> left < right;
+			case LESS_EQUAL -> left <= right;
+			default -> Numbers.box(arithmetic(expr.operator.type, left, right));
+		};
+	}
+
+	private double number(Expr expr) {
+		if (expr instanceof Expr.Binary binary && binary.numeric)
+			return arithmetic(binary.operator.type, this.number(binary.left), this.number(binary.right));
+		if (expr instanceof Expr.Unary unary && unary.numeric)
+			return -this.number(unary.right);
+		if (expr instanceof Expr.Literal literal)
+			return Numbers.value(literal.value);
+		if (expr instanceof Expr.Grouping grouping)
+			return this.number(grouping.expression);
+		return Numbers.value(this.evaluate(expr));
+	}
+
+	private static double arithmetic(TokenType operator, double left, double right) {
+		return switch (operator) {
+			case PLUS -> left + right;
+			case MINUS -> left - right;
+			case STAR -> left * right;
+			case SLASH -> left / right;
+			case STAR_STAR -> Math.pow(left, right);
+			default -> Numbers.remainder(left, right);
+		};
+	}
+
+	@Override
+	public Object visitLogicalExpr(Expr.Logical expr) {
+		Object left = this.evaluate(expr.left);
+
+		if (expr.operator.type == TokenType.OR) {
+			if (this.isTruthy(left))
+				return left;
+		} else if (expr.operator.type == TokenType.AND) {
+			if (!this.isTruthy(left))
+				return left;
+		}
+
+		return this.evaluate(expr.right);
+	}
+
+	@Override
+	public Object visitCallExpr(Expr.Call expr) {
+		this.tick();
+		if (expr.inline != null)
+			return this.inlined(expr, expr.inline);
+		return this.call(expr, this.evaluate(expr.callee));
+	}
+
+	private Object call(Expr.Call expr, Object callee) {
+		if (!(callee instanceof LoxCallable function)) {
+			throw new RuntimeError(expr.paren, "Can only call functions and classes.");
+		}
+
+		var arguments = expr.arguments;
+		var arity = function.arity();
+		if (arguments.size() != arity) {
+			// the arguments are still evaluated first, for what they do
+			for (var argument : arguments) {
+				this.evaluate(argument);
+			}
+			throw new RuntimeError(expr.paren,
+				"Expected " + arity + " arguments but got " + arguments.size() + "."
+			);
+		}
+
+		if (function instanceof LoxFunction loxFunction)
+			return this.callFunction(loxFunction, expr.paren, arguments);
+
+		if (function instanceof LoxClass class_) {
+			this.allocate();
+			var instance = new LoxInstance(class_);
+			var initializer = class_.initializer();
+			if (initializer != null)
+				this.callFunction(initializer.bind(instance), expr.paren, arguments);
+			return instance;
+		}
+
+		try {
+			return switch (arity) {
+				case 0 -> function.call0(this);
+				case 1 -> function.call1(this, this.evaluate(arguments.get(0)));
+				case 2 -> function.call2(this, this.evaluate(arguments.get(0)), this.evaluate(arguments.get(1)));
+				case 3 -> function.call3(this,
+					this.evaluate(arguments.get(0)),
+					this.evaluate(arguments.get(1)),
+					this.evaluate(arguments.get(2))
+				);
+				default -> {
+					var values = new Object[arity];
+					for (var i = 0; i < arity; i++) {
+						values[i] = this.evaluate(arguments.get(i));
+					}
+					yield function.call(this, values);
+				}
+			};
+		} catch (NativeError e) {
+			throw new RuntimeError(expr.paren, e.getMessage());
+		}
+	}
+
+	private Object callFunction(LoxFunction function, Token paren, List<Expr> arguments) {
+		// evaluate the arguments straight into the callee frame
+		var frame = function.frame();
+		for (var i = 0; i < arguments.size(); i++) {
+			function.argument(frame, i, this.evaluate(arguments.get(i)), paren);
+		}
+		return function.invoke(this, frame);
+	}
+
+	// A call the Inliner marked: the body it inlined, if the callee is still
+	// the function it came from, or else the call as usual. A memoized
+	// function's body is run too, since it gives the same result.
+	private Object inlined(Expr.Call expr, Inliner.Inline inline) {
+		var declaration = inline.declaration;
+		var arity = declaration.params.size();
+		Object[] slots;
+		if (inline.method) {
+			var get = (Expr.Get) expr.callee;
+			Object obj = this.evaluate(get.object);
+			if (!(obj instanceof LoxInstance instance) || !inline.inlines(instance.method(get.name.lexeme)))
+				return this.call(expr, this.property(obj, get.name));
+			slots = new Object[arity + 1];
+			slots[arity] = instance;
+		} else {
+			Object callee = this.evaluate(expr.callee);
+			var function = callee instanceof MemoizedFunction memo ? memo.function : callee;
+			if (!(function instanceof LoxFunction loxFunction) || !inline.inlines(loxFunction))
+				return this.call(expr, callee);
+			slots = new Object[arity];
+		}
+
+		for (var i = 0; i < arity; i++) {
+			slots[i] = this.evaluate(expr.arguments.get(i));
+			LoxFunction.argument(declaration, i, slots[i], expr.paren);
+		}
+		var previous = this.slots;
+		this.slots = slots;
+		try {
+			return LoxFunction.returned(declaration, this.evaluate(inline.body));
+		} finally {
+			this.slots = previous;
+		}
+	}
+
+	@Override
+	public Object visitGetExpr(Expr.Get expr) {
+		var obj = this.evaluate(expr.object);
+		if (obj instanceof LoxRecord record) {
+			// a record of the class seen here last time keeps the field in the
+			// same slot (see LoxDataClass.Field for why it isn't resolved
+			// ahead of time)
+			var field = expr.field;
+			if (field == null || field.class_ != record.class_) {
+				field = record.class_.field(expr.name.lexeme);
+				if (field == null)
+					return record.get(expr.name);
+				expr.field = field;
+			}
+			return record.at(field.slot);
+		}
+		return this.property(obj, expr.name);
+	}
+
+	private Object property(Object obj, Token name) {
+		if (obj instanceof LoxInstance)
+			return ((LoxInstance) obj).get(name);
+		if (obj instanceof LoxBuiltin)
+			return ((LoxBuiltin) obj).get(name);
+
+		throw new RuntimeError(name, "Only instances have properties.");
+	}
+
+	@Override
+	public Object visitSetExpr(Expr.Set expr) {
+		Object obj = this.evaluate(expr.object);
+		if (obj instanceof LoxRecord)
+			throw new RuntimeError(expr.name, "Can't change the fields of a data record.");
+		if (!(obj instanceof LoxInstance))
+			throw new RuntimeError(expr.name, "Only instances have fields.");
+
+		if (this.isShared((LoxInstance) obj))
+			throw new RuntimeError(expr.name, "A parallel function can't change a shared object.");
+
+		Object value = this.evaluate(expr.value);
+		((LoxInstance) obj).set(expr.name, value);
+
+		return value;
+	}
+
+	@Override
+	public Object visitIndexExpr(Expr.Index expr) {
+		Object obj = this.evaluate(expr.object);
+		if (!(obj instanceof LoxIndexable))
+			throw new RuntimeError(expr.bracket, "Only lists, maps and arrays can be indexed.");
+
+		Object index = this.evaluate(expr.index);
+		return ((LoxIndexable) obj).getIndex(expr.bracket, index);
+	}
+
+	@Override
+	public Object visitSetIndexExpr(Expr.SetIndex expr) {
+		Object obj = this.evaluate(expr.object);
+		if (!(obj instanceof LoxIndexable))
+			throw new RuntimeError(expr.bracket, "Only lists, maps and arrays can be indexed.");
+		if (obj instanceof Mutable state && this.isShared(state))
+			throw new RuntimeError(expr.bracket, "A parallel function can't change a shared object.");
+
+		Object index = this.evaluate(expr.index);
+		Object value = this.evaluate(expr.value);
+		((LoxIndexable) obj).setIndex(expr.bracket, index, value);
+
+		return value;
+	}
+
+	@Override
+	public Object visitThisExpr(Expr.This expr) {
+		return this.lookupVariable(expr.keyword, expr);
+	}
+
+	public Object visitSuperExpr(Expr.Super expr) {
+		var distance = this.locals.get(expr);
+		var super_ = (LoxClass)this.environment.getAt(distance, "super");
+		var object = (LoxInstance)this.environment.getAt(distance, "this");
+		var method = super_.findMethod(expr.method.lexeme);
+		return method.bind(object);
+	}
+
+	@Override
+	public Object visitSlotExpr(Expr.Slot expr) {
+		return this.slots[expr.index];
+	}
+
+	private Object lookupVariable(Token name, Expr expr) {
+		Integer distance = this.locals.get(expr);
+		if (distance != null) {
+			return this.environment.getAt(distance, name);
+		} else {
+			return this.environment.globals.get(name);
+		}
+	}
+
+	private void checkNumberOperand(Token operator, Object operand) {
+		if (Numbers.isNumber(operand))
+			return;
+		throw new RuntimeError(operator, "Operand must be a number.");
+	}
+
+	boolean isTruthy(Object object) {
+		if (object == null)
+			return false;
+		if (object instanceof Boolean)
+			return (boolean) object;
+		return true;
+	}
+
+	private void checkNumberOperands(Token operator, Object left, Object right) {
+		if (Numbers.isNumber(left) && Numbers.isNumber(right))
+			return;
+		throw new RuntimeError(operator, "Operands must be numbers.");
+	}
+
+	private boolean isEqual(Object left, Object right) {
+		if (left == null && right == null)
+			return true;
+		if (left == null)
+			return false;
+
+		return left.equals(right);
+	}
+
+	static String stringify(Object object) {
+		if (object == null)
+			return "nil";
+
+		if (Numbers.isNumber(object))
+			return Numbers.format(object);
+
+		return object.toString();
+	}
 }
\ No newline at end of file
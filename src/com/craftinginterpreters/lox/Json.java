@@ -0,0 +1,230 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough JSON for the language server: objects become Maps, arrays
+// Lists, numbers Doubles, and true, false and null their Java values.
+class Json {
+	private final String text;
+	private int current = 0;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	static Object parse(String text) {
+		var json = new Json(text);
+		var value = json.value();
+		json.skipWhitespace();
+		if (json.current != text.length())
+			throw json.error("Unexpected text after JSON value");
+		return value;
+	}
+
+	static String write(Object value) {
+		var builder = new StringBuilder();
+		write(builder, value);
+		return builder.toString();
+	}
+
+	private Object value() {
+		this.skipWhitespace();
+		if (this.current >= this.text.length())
+			throw this.error("Unexpected end of JSON");
+
+		var c = this.text.charAt(this.current);
+		switch (c) {
+		case '{':
+			return this.object();
+		case '[':
+			return this.array();
+		case '"':
+			return this.string();
+		case 't':
+			return this.literal("true", Boolean.TRUE);
+		case 'f':
+			return this.literal("false", Boolean.FALSE);
+		case 'n':
+			return this.literal("null", null);
+		default:
+			if (c == '-' || (c >= '0' && c <= '9'))
+				return this.number();
+			throw this.error("Unexpected character '" + c + "'");
+		}
+	}
+
+	private Map<String, Object> object() {
+		var object = new LinkedHashMap<String, Object>();
+		this.current++;
+		this.skipWhitespace();
+		if (this.match('}'))
+			return object;
+
+		do {
+			this.skipWhitespace();
+			if (!this.check('"'))
+				throw this.error("Expect string key");
+			var key = this.string();
+			this.skipWhitespace();
+			this.expect(':');
+			object.put(key, this.value());
+			this.skipWhitespace();
+		} while (this.match(','));
+		this.expect('}');
+		return object;
+	}
+
+	private List<Object> array() {
+		var array = new ArrayList<Object>();
+		this.current++;
+		this.skipWhitespace();
+		if (this.match(']'))
+			return array;
+
+		do {
+			array.add(this.value());
+			this.skipWhitespace();
+		} while (this.match(','));
+		this.expect(']');
+		return array;
+	}
+
+	private String string() {
+		this.current++;
+		var builder = new StringBuilder();
+		for (;;) {
+			if (this.current >= this.text.length())
+				throw this.error("Unterminated string");
+			var c = this.text.charAt(this.current++);
+			if (c == '"')
+				return builder.toString();
+			if (c != '\\') {
+				builder.append(c);
+				continue;
+			}
+
+			if (this.current >= this.text.length())
+				throw this.error("Unterminated string");
+			var escape = this.text.charAt(this.current++);
+			switch (escape) {
+			case 'b' -> builder.append('\b');
+			case 'f' -> builder.append('\f');
+			case 'n' -> builder.append('\n');
+			case 'r' -> builder.append('\r');
+			case 't' -> builder.append('\t');
+			case 'u' -> {
+				if (this.current + 4 > this.text.length())
+					throw this.error("Bad unicode escape");
+				builder.append((char) Integer.parseInt(this.text.substring(this.current, this.current + 4), 16));
+				this.current += 4;
+			}
+			default -> builder.append(escape);
+			}
+		}
+	}
+
+	private Double number() {
+		var start = this.current;
+		while (this.current < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.current)) >= 0)
+			this.current++;
+		try {
+			return Double.parseDouble(this.text.substring(start, this.current));
+		} catch (NumberFormatException e) {
+			throw this.error("Bad number");
+		}
+	}
+
+	private Object literal(String word, Object value) {
+		if (!this.text.startsWith(word, this.current))
+			throw this.error("Unexpected character '" + this.text.charAt(this.current) + "'");
+		this.current += word.length();
+		return value;
+	}
+
+	private void skipWhitespace() {
+		while (this.current < this.text.length() && Character.isWhitespace(this.text.charAt(this.current)))
+			this.current++;
+	}
+
+	private boolean check(char c) {
+		return this.current < this.text.length() && this.text.charAt(this.current) == c;
+	}
+
+	private boolean match(char c) {
+		if (!this.check(c))
+			return false;
+		this.current++;
+		return true;
+	}
+
+	private void expect(char c) {
+		if (!this.match(c))
+			throw this.error("Expect '" + c + "'");
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at offset " + this.current + ".");
+	}
+
+	private static void write(StringBuilder builder, Object value) {
+		if (value == null) {
+			builder.append("null");
+		} else if (value instanceof String string) {
+			writeString(builder, string);
+		} else if (value instanceof Double number) {
+			// ids and positions are integers, and clients expect them written so
+			if (number == Math.rint(number) && !Double.isInfinite(number))
+				builder.append(number.longValue());
+			else
+				builder.append(number);
+		} else if (value instanceof Number || value instanceof Boolean) {
+			builder.append(value);
+		} else if (value instanceof Map<?, ?> map) {
+			builder.append('{');
+			var first = true;
+			for (var entry : map.entrySet()) {
+				if (!first)
+					builder.append(',');
+				first = false;
+				writeString(builder, entry.getKey().toString());
+				builder.append(':');
+				write(builder, entry.getValue());
+			}
+			builder.append('}');
+		} else if (value instanceof List<?> list) {
+			builder.append('[');
+			for (var i = 0; i < list.size(); i++) {
+				if (i > 0)
+					builder.append(',');
+				write(builder, list.get(i));
+			}
+			builder.append(']');
+		} else {
+			throw new IllegalArgumentException("Can't write " + value.getClass().getSimpleName() + " as JSON.");
+		}
+	}
+
+	private static void writeString(StringBuilder builder, String string) {
+		builder.append('"');
+		for (var i = 0; i < string.length(); i++) {
+			var c = string.charAt(i);
+			switch (c) {
+			case '"' -> builder.append("\\\"");
+			case '\\' -> builder.append("\\\\");
+			case '\n' -> builder.append("\\n");
+			case '\r' -> builder.append("\\r");
+			case '\t' -> builder.append("\\t");
+			default -> {
+				if (c < 0x20)
+					builder.append(String.format("\\u%04x", (int) c));
+				else
+					builder.append(c);
+			}
+			}
+		}
+		builder.append('"');
+	}
+}
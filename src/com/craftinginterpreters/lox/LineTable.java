@@ -0,0 +1,179 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The line each statement starts on, worked out from the first token found
+// in it. Statements are looked up as they run and remembered. A statement
+// made of nothing but literals, like print 1;, carries no token and has no
+// line (-1).
+class LineTable implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+	private final Map<Stmt, Integer> lines = new HashMap<>();
+
+	int line(Stmt stmt) {
+		var line = this.lines.get(stmt);
+		if (line == null) {
+			line = stmt.accept(this);
+			this.lines.put(stmt, line);
+		}
+		return line;
+	}
+
+	private static int first(int line, int otherwise) {
+		return line >= 0 ? line : otherwise;
+	}
+
+	private int of(Expr expr) {
+		return expr == null ? -1 : expr.accept(this);
+	}
+
+	@Override
+	public Integer visitBlockStmt(Stmt.Block stmt) {
+		for (var statement : stmt.statements) {
+			var line = statement.accept(this);
+			if (line >= 0)
+				return line;
+		}
+		return -1;
+	}
+
+	@Override
+	public Integer visitExpressionStmt(Stmt.Expression stmt) {
+		return this.of(stmt.expression);
+	}
+
+	@Override
+	public Integer visitPrintStmt(Stmt.Print stmt) {
+		return this.of(stmt.expression);
+	}
+
+	@Override
+	public Integer visitVarStmt(Stmt.Var stmt) {
+		return stmt.name.line;
+	}
+
+	@Override
+	public Integer visitIfStmt(Stmt.If stmt) {
+		return this.of(stmt.condition);
+	}
+
+	@Override
+	public Integer visitWhileStmt(Stmt.While stmt) {
+		return this.of(stmt.condition);
+	}
+
+	@Override
+	public Integer visitCountedStmt(Stmt.Counted stmt) {
+		return stmt.name.line;
+	}
+
+	@Override
+	public Integer visitFunctionStmt(Stmt.Function stmt) {
+		return stmt.name.line;
+	}
+
+	@Override
+	public Integer visitReturnStmt(Stmt.Return stmt) {
+		return stmt.keyword.line;
+	}
+
+	@Override
+	public Integer visitClassStmt(Stmt.Class stmt) {
+		return stmt.name.line;
+	}
+
+	@Override
+	public Integer visitImportStmt(Stmt.Import stmt) {
+		return stmt.keyword.line;
+	}
+
+	@Override
+	public Integer visitDataStmt(Stmt.Data stmt) {
+		return stmt.name.line;
+	}
+
+	@Override
+	public Integer visitYieldStmt(Stmt.Yield stmt) {
+		return stmt.keyword.line;
+	}
+
+	@Override
+	public Integer visitEachStmt(Stmt.Each stmt) {
+		return stmt.name.line;
+	}
+
+	@Override
+	public Integer visitBinaryExpr(Expr.Binary expr) {
+		return first(this.of(expr.left), expr.operator.line);
+	}
+
+	@Override
+	public Integer visitLogicalExpr(Expr.Logical expr) {
+		return first(this.of(expr.left), expr.operator.line);
+	}
+
+	@Override
+	public Integer visitGroupingExpr(Expr.Grouping expr) {
+		return this.of(expr.expression);
+	}
+
+	@Override
+	public Integer visitLiteralExpr(Expr.Literal expr) {
+		return -1;
+	}
+
+	@Override
+	public Integer visitUnaryExpr(Expr.Unary expr) {
+		return expr.operator.line;
+	}
+
+	@Override
+	public Integer visitVariableExpr(Expr.Variable expr) {
+		return expr.name.line;
+	}
+
+	@Override
+	public Integer visitAssignExpr(Expr.Assign expr) {
+		return expr.name.line;
+	}
+
+	@Override
+	public Integer visitCallExpr(Expr.Call expr) {
+		return first(this.of(expr.callee), expr.paren.line);
+	}
+
+	@Override
+	public Integer visitGetExpr(Expr.Get expr) {
+		return first(this.of(expr.object), expr.name.line);
+	}
+
+	@Override
+	public Integer visitSetExpr(Expr.Set expr) {
+		return first(this.of(expr.object), expr.name.line);
+	}
+
+	@Override
+	public Integer visitIndexExpr(Expr.Index expr) {
+		return first(this.of(expr.object), expr.bracket.line);
+	}
+
+	@Override
+	public Integer visitSetIndexExpr(Expr.SetIndex expr) {
+		return first(this.of(expr.object), expr.bracket.line);
+	}
+
+	@Override
+	public Integer visitThisExpr(Expr.This expr) {
+		return expr.keyword.line;
+	}
+
+	@Override
+	public Integer visitSuperExpr(Expr.Super expr) {
+		return expr.keyword.line;
+	}
+
+	@Override
+	public Integer visitSlotExpr(Expr.Slot expr) {
+		return expr.name.line;
+	}
+}
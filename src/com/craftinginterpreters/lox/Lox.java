@@ -1,82 +1,232 @@
 package com.craftinginterpreters.lox;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 public class Lox {
-	static boolean hadError = false;
-	static boolean hadRuntimeError = false;
+	// whether the script run on this thread had a compile error; the daemon
+	// runs several at once
+	private static final ThreadLocal<Boolean> hadError = ThreadLocal.withInitial(() -> false);
 
-	private static final Interpreter interpreter = new Interpreter();
+	interface Reporter {
+		void report(int line, String where, String message);
+	}
+
+	// where compile errors go; the language server and module loader collect
+	// them instead, the loader on several threads at once
+	static final ThreadLocal<Reporter> reporter = ThreadLocal.withInitial(() -> (line, where, message) -> {
+		System.err.println("[line " + line + "] Error" + where + ": " + message);
+	});
 
 	public static void main(String[] args) throws IOException {
-		if (args.length > 1) {
-			System.out.println("Usage: jlox [script]");
-			System.exit(64);
-		} else if (args.length == 1) {
-			runFile(args[0]);
+		if (args.length > 0 && args[0].equals("--lsp")) {
+			if (args.length > 1)
+				usage();
+			System.exit(new LoxLanguageServer(System.in, System.out).serve());
+		}
+
+		var flush = Console.defaultFlush();
+		var daemon = false;
+		Path debug = null;
+		long fuel = Long.MAX_VALUE;
+		long timeout = 0;
+		long allocations = Long.MAX_VALUE;
+		var first = 0;
+		for (; first < args.length && args[first].startsWith("--"); first++) {
+			var option = args[first];
+			if (option.equals("--daemon"))
+				daemon = true;
+			else if (option.startsWith("--flush="))
+				flush = parseFlush(option.substring("--flush=".length()));
+			else if (option.equals("--debug"))
+				debug = DebugSession.defaultSocket();
+			else if (option.startsWith("--debug="))
+				debug = Paths.get(option.substring("--debug=".length()));
+			else if (option.startsWith("--fuel="))
+				fuel = parseLimit(option.substring("--fuel=".length()));
+			else if (option.startsWith("--timeout="))
+				timeout = parseLimit(option.substring("--timeout=".length())) * 1_000_000_000L;
+			else if (option.startsWith("--allocations="))
+				allocations = parseLimit(option.substring("--allocations=".length()));
+			else if (option.equals("--no-inline"))
+				Inliner.enabled = false;
+			else
+				usage();
+		}
+
+		if (daemon) {
+			// the limits are for each script the daemon runs
+			if (args.length > first + 1 || debug != null)
+				usage();
+			var socket = args.length > first ? Paths.get(args[first]) : LoxDaemon.defaultSocket();
+			new LoxDaemon(socket, fuel, timeout, allocations).serve();
+		} else if (args.length > first) {
+			var scriptArgs = Arrays.asList(args).subList(first + 1, args.length);
+			if (debug != null)
+				debugFile(args[first], scriptArgs, Console.standard(flush), debug);
+			else
+				runFile(args[first], scriptArgs, Console.standard(flush), new Budget(fuel, timeout, allocations));
+		} else if (debug != null) {
+			usage();
 		} else {
 			runPrompt();
 		}
 	}
 
-	private static void runFile(String path) throws IOException {
-		byte[] bytes = Files.readAllBytes(Paths.get(path));
-		run(new String(bytes, Charset.defaultCharset()));
+	private static Console.Flush parseFlush(String policy) {
+		return switch (policy) {
+			case "line" -> Console.Flush.LINE;
+			case "size" -> Console.Flush.SIZE;
+			case "exit" -> Console.Flush.EXIT;
+			default -> {
+				usage();
+				yield null;
+			}
+		};
+	}
+
+	private static long parseLimit(String limit) {
+		try {
+			var value = Long.parseLong(limit);
+			if (value > 0)
+				return value;
+		} catch (NumberFormatException e) {
+			// fall through to the usage
+		}
+		usage();
+		return 0;
+	}
+
+	private static void usage() {
+		System.out.println("Usage: jlox [--flush=line|size|exit] [--debug[=socket]] [--no-inline] [limits]\n"
+				+ "            [script [args...]]\n"
+				+ "       jlox --daemon [--no-inline] [limits] [socket]\n"
+				+ "       jlox --lsp\n"
+				+ "where limits are [--fuel=ticks] [--timeout=seconds] [--allocations=count]");
+		System.exit(64);
+	}
+
+	private static void runFile(String path, List<String> args, Console console, Budget budget) throws IOException {
+		var interpreter = new Interpreter(args, console);
+		interpreter.limit(budget);
+		int status = runFile(path, interpreter);
+		if (status != 0)
+			System.exit(status);
+	}
+
+	private static void debugFile(String path, List<String> args, Console console, Path socket) throws IOException {
+		int status;
+		// every call is stepped into as written
+		Inliner.enabled = false;
+		try (var session = DebugSession.listen(socket)) {
+			status = runFile(path, new DebugInterpreter(args, console, session));
+			session.exited(status);
+		}
+		if (status != 0)
+			System.exit(status);
+	}
+
+	// a relative path is taken from the interpreter's directory
+	static int runFile(String path, Interpreter interpreter) throws IOException {
+		hadError.set(false);
+
+		var file = interpreter.file(path);
+		byte[] bytes = Files.readAllBytes(file);
+		run(new String(bytes, Charset.defaultCharset()), interpreter, file.getParent(), null);
+		// then the timers and I/O it started, until none are left
+		if (!hadError.get() && !interpreter.failed())
+			interpreter.events.run(interpreter);
+		// and the actors it started stop with it
+		interpreter.stopActors();
 
 		// indicate an error in the exit code
-		if (hadError)
-			System.exit(65);
-		if (hadRuntimeError)
-			System.exit(70);
+		if (hadError.get())
+			return 65;
+		if (interpreter.failed())
+			return 70;
+		return 0;
 	}
 
-	private static void runPrompt() throws IOException {
-		InputStreamReader input = new InputStreamReader(System.in);
-		BufferedReader reader = new BufferedReader(input);
+	private static void runPrompt() {
+		// the prompt reads through the interpreter's console, so lines typed
+		// for gets aren't swallowed by a second buffer
+		Interpreter interpreter = new Interpreter();
+		Console console = interpreter.console;
+		// remembers the globals annotated on earlier lines
+		var types = new TypeChecker();
 
-		System.out.println("Lox");
+		console.println("Lox");
 		for (;;) {
-			System.out.print("> ");
-			String line = reader.readLine();
+			console.print("> ");
+			String line = console.readLine();
 			if (line == null)
 				break;
-			run(line);
-			hadError = false;
+			run(line, interpreter, Paths.get("").toAbsolutePath(), types);
+			hadError.set(false);
 		}
 	}
 
-	private static void run(String source) {
+	// imports are looked for relative to directory; a REPL line isn't a whole
+	// program, so it is type checked by the checker the prompt keeps for all
+	// its lines, and types is null for a file
+	private static void run(String source, Interpreter interpreter, Path directory, TypeChecker types) {
 		// parse time
 		Scanner scanner = new Scanner(source);
 		List<Token> tokens = scanner.scanTokens();
 		Parser parser = new Parser(tokens);
 		List<Stmt> statements = parser.parse();
-		if (hadError)
+		if (hadError.get())
 			return;
 
+		// the modules the program imports, compiled side by side
+		var imports = ModuleCache.imports(statements);
+		var paths = ModuleCache.locate(imports, directory);
+		var modules = ModuleCache.load(paths);
+		if (hadError.get())
+			return;
+		link(imports, paths, modules, interpreter);
+
 		// compile time
 		var resolver = new Resolver(interpreter);
-		resolver.resolve(statements);
-		if (hadError)
+		if (types == null) {
+			resolver.resolveProgram(statements);
+		} else {
+			resolver.resolve(statements);
+			types.check(statements);
+		}
+		if (hadError.get())
 			return;
 
 		// runtime
 		interpreter.interpret(statements);
 	}
 
+	private static void link(List<Stmt.Import> imports, List<Path> paths, Map<Path, ModuleCache.Module> modules,
+			Interpreter interpreter) {
+		for (var i = 0; i < imports.size(); i++) {
+			interpreter.link(imports.get(i), modules.get(paths.get(i)));
+		}
+		for (var module : modules.values()) {
+			interpreter.adopt(module.resolution);
+			for (var i = 0; i < module.imports.size(); i++) {
+				interpreter.link(module.imports.get(i), modules.get(module.importPaths.get(i)));
+			}
+		}
+	}
+
 	static void error(int line, String message) {
 		report(line, "", message);
 	}
 
-	private static void report(int line, String where, String message) {
-		System.err.println("[line " + line + "] Error" + where + ": " + message);
-		hadError = true;
+	static void report(int line, String where, String message) {
+		hadError.set(true);
+		reporter.get().report(line, where, message);
 	}
 
 	static void error(Token token, String message) {
@@ -86,9 +236,4 @@ public class Lox {
 			report(token.line, " at '" + token.lexeme + "'", message);
 		}
 	}
-
-	static void runtimeError(RuntimeError error) {
-		System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-		hadRuntimeError = true;
-	}
 }
\ No newline at end of file
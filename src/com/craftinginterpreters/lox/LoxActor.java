@@ -0,0 +1,193 @@
+package com.craftinginterpreters.lox;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// actor(fn) runs fn on a virtual thread in an interpreter of its own, with
+// its own copies of the caller's globals that fn uses, so it shares nothing a
+// script can change. Actors talk by send(actor, value) and receive(), and
+// every message is copied on the way (see DeepCopy). A mailbox holds
+// MAILBOX_CAPACITY messages, and a sender waits while it is full, so a slow
+// actor slows down those sending to it. Once fn returns, the actor runs its
+// timers and I/O like a script does and then stops. It runs under a budget
+// drawing on the script's, and the error it stopped on is kept for join() to
+// raise or error() to return. Actors still running when the script ends are
+// stopped with it, and those that failed with no one asking are reported then.
+class LoxActor implements LoxBuiltin {
+	static final int MAILBOX_CAPACITY = 64;
+	// how often a thread waiting on an actor looks at its own budget
+	private static final long POLL_MILLIS = 10;
+	// how long the end of a script waits for an actor to stop
+	private static final long STOP_MILLIS = 1000;
+
+	// stands in for nil, which a queue can't hold
+	private static final Object NIL = new Object();
+	private static final AtomicInteger count = new AtomicInteger();
+
+	private final String name;
+	private final BlockingQueue<Object> mailbox = new ArrayBlockingQueue<>(MAILBOX_CAPACITY);
+	private volatile boolean stopped = false;
+	// what the actor stopped on, or null, and whether anyone has been told
+	private volatile String error = null;
+	private volatile boolean reported = false;
+	// set when the script stops the actor, which is no failure of its own
+	private volatile boolean shutdown = false;
+	private final Budget budget;
+	// null for the script's own actor, which runs on the script's thread
+	private final Thread thread;
+
+	LoxActor(String name) {
+		this.name = name;
+		this.budget = null;
+		this.thread = null;
+	}
+
+	// The thread is made here but only started once the actor is built, so
+	// its body and the threads stopping or joining it all see the actor whole.
+	private LoxActor(String name, Interpreter caller, LoxCallable callable) {
+		this.name = name;
+		this.budget = caller.actorBudget();
+		var isolate = caller.isolate(this, this.budget);
+		var body = DeepCopy.world(caller, isolate, callable);
+		this.thread = Thread.ofVirtual().name("lox-actor-" + count.incrementAndGet()).unstarted(() -> {
+			try {
+				isolate.callBack(body);
+				if (!isolate.failed())
+					isolate.events.run(isolate);
+			} finally {
+				isolate.refundAllocations();
+				if (!this.shutdown)
+					this.error = isolate.failure();
+				this.stopped = true;
+			}
+		});
+	}
+
+	static LoxActor start(Interpreter caller, Object function) {
+		if (!(function instanceof LoxCallable callable) || callable.arity() != 0)
+			throw new NativeError("Actor must be a function that takes no arguments.");
+
+		var named = callable instanceof MemoizedFunction memoized ? memoized.function : callable;
+		var actor = new LoxActor(named instanceof LoxFunction fn ? fn.name() : "actor", caller, callable);
+		actor.thread.start();
+		return actor;
+	}
+
+	String name() {
+		return this.name;
+	}
+
+	void send(Object message) {
+		var copy = DeepCopy.message(message);
+		try {
+			while (!this.mailbox.offer(copy == null ? NIL : copy, 10, TimeUnit.MILLISECONDS)) {
+				if (this.stopped)
+					throw new NativeError("Can't send to an actor that has stopped.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NativeError("Interrupted while sending to an actor.");
+		}
+	}
+
+	// waits for the next message, as long as the receiver's budget lasts
+	Object receive(Interpreter receiver) {
+		try {
+			Object message;
+			while ((message = this.mailbox.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+				if (receiver.budget() != null)
+					receiver.budget().check();
+			}
+			return message == NIL ? null : message;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NativeError("Interrupted while waiting for a message.");
+		}
+	}
+
+	// waits for the actor to stop, as long as the caller's budget lasts, and
+	// raises the error it stopped on
+	void join(Interpreter caller) throws InterruptedException {
+		if (this.thread != null) {
+			while (!this.thread.join(Duration.ofMillis(POLL_MILLIS))) {
+				if (caller.budget() != null)
+					caller.budget().check();
+			}
+		}
+		// an actor stopped by the caller's budget running out
+		if (caller.budget() != null)
+			caller.budget().check();
+		var error = this.error;
+		if (error != null) {
+			this.reported = true;
+			throw new NativeError("Actor " + this.name + " failed: " + error);
+		}
+	}
+
+	// the error the actor stopped on, or null; asking counts as being told
+	String error() {
+		this.reported = true;
+		return this.error;
+	}
+
+	// the error the actor stopped on, if no one has asked about it yet
+	String unreported() {
+		return this.reported ? null : this.error();
+	}
+
+	// Stops the actor at its next slice or wait. An actor blocked reading
+	// input can't be woken, and is left to end with the process.
+	void stop() {
+		this.shutdown = true;
+		if (this.budget != null)
+			this.budget.cancel();
+		if (this.thread == null)
+			return;
+		this.thread.interrupt();
+		try {
+			this.thread.join(Duration.ofMillis(STOP_MILLIS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public Object get(Token name) {
+		var actor = this;
+		return switch (name.lexeme) {
+			case "join" -> new Native("join", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					try {
+						actor.join(intp);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new NativeError("Interrupted while waiting for an actor.");
+					}
+					return null;
+				}
+			};
+			case "stopped" -> new Native("stopped", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return actor.stopped;
+				}
+			};
+			case "error" -> new Native("error", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return actor.error();
+				}
+			};
+			default -> throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "<actor " + this.name + ">";
+	}
+}
@@ -0,0 +1,6 @@
+package com.craftinginterpreters.lox;
+
+// Built-in objects whose properties are native methods
+interface LoxBuiltin {
+	Object get(Token name);
+}
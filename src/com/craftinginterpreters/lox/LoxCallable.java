@@ -1,9 +1,26 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 interface LoxCallable {
 	int arity();
 
-	Object call(Interpreter interpreter, List<Object> arguments);
-}
\ No newline at end of file
+	Object call(Interpreter interpreter, Object... arguments);
+
+	// fixed-arity entry points, so call sites with few arguments don't have
+	// to box them into an array
+
+	default Object call0(Interpreter interpreter) {
+		return this.call(interpreter);
+	}
+
+	default Object call1(Interpreter interpreter, Object a) {
+		return this.call(interpreter, a);
+	}
+
+	default Object call2(Interpreter interpreter, Object a, Object b) {
+		return this.call(interpreter, a, b);
+	}
+
+	default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return this.call(interpreter, a, b, c);
+	}
+}
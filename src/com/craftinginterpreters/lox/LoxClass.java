@@ -1,12 +1,14 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 
 class LoxClass implements LoxCallable {
 	final String name;
 	final LoxClass super_;
 	final Map<String, LoxFunction> methods;
+	private LoxFunction initializer;
+	private boolean initializerResolved = false;
 
 	LoxClass(String name, LoxClass super_, Map<String, LoxFunction> methods) {
 		this.name = name;
@@ -15,10 +17,11 @@ class LoxClass implements LoxCallable {
 	}
 
 	@Override
-	public Object call(Interpreter intp, List<Object> args) {
+	public Object call(Interpreter intp, Object... args) {
+		intp.allocate();
 		var instance = new LoxInstance(this);
 		
-		var initializer = this.findMethod("init");
+		var initializer = this.initializer();
 		if (initializer != null)
 			initializer.bind(instance).call(intp, args);
 
@@ -27,7 +30,7 @@ class LoxClass implements LoxCallable {
 
 	@Override
 	public int arity() {
-		var initializer = this.findMethod("init");
+		var initializer = this.initializer();
 		if (initializer != null)
 			return initializer.arity();
 		return 0;
@@ -38,6 +41,24 @@ class LoxClass implements LoxCallable {
 		return "<class " + this.name + ">";
 	}
 
+	// methods are only added while the class statement runs, so the lookup
+	// can be done once, the first time the class is called
+	LoxFunction initializer() {
+		if (!this.initializerResolved) {
+			this.initializer = this.findMethod("init");
+			this.initializerResolved = true;
+		}
+		return this.initializer;
+	}
+
+	LoxClass copy(DeepCopy copier) {
+		var copy = new LoxClass(this.name, (LoxClass) copier.copy(this.super_), new HashMap<>());
+		// before the methods, which are bound to the class
+		copier.copied(this, copy);
+		this.methods.forEach((name, method) -> copy.methods.put(name, method.copy(copier)));
+		return copy;
+	}
+
 	LoxFunction findMethod(String name) {
 		if (this.methods.containsKey(name))
 			return this.methods.get(name);
@@ -0,0 +1,235 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Serves script runs over a Unix domain socket so that one warmed-up JVM can
+ * run many short scripts (see scripts/jlox-client.py for the client side).
+ *
+ * A request is the client's working directory, the script path and its
+ * arguments, followed by stdin as a sequence of length-prefixed chunks (a
+ * zero length marks EOF). The reply is a sequence of tagged frames: stdout
+ * and stderr chunks, then the exit code. Relative paths, the script's and
+ * those the script opens, are taken from the client's directory.
+ *
+ * Requests are served side by side, each with a fresh Interpreter so no
+ * globals leak between runs. A ScriptScheduler shares the cores among them,
+ * so a script that doesn't finish holds up no one else, and each runs under
+ * a budget of its own. A request whose client goes away is cancelled the
+ * next time its script writes anything.
+ */
+class LoxDaemon {
+	static final byte STDOUT = 'O';
+	static final byte STDERR = 'E';
+	static final byte EXIT = 'X';
+
+	private final Path socket;
+	// the limits of each request's budget
+	private final long fuel;
+	private final long timeout;
+	private final long allocations;
+	private final ScriptScheduler scheduler = new ScriptScheduler(Runtime.getRuntime().availableProcessors());
+
+	LoxDaemon(Path socket, long fuel, long timeoutNanos, long allocations) {
+		this.socket = socket;
+		this.fuel = fuel;
+		this.timeout = timeoutNanos;
+		this.allocations = allocations;
+	}
+
+	static Path defaultSocket() {
+		var path = System.getenv("JLOX_SOCKET");
+		if (path != null && !path.isEmpty())
+			return Paths.get(path);
+		return Paths.get(System.getProperty("java.io.tmpdir"), "jlox-" + System.getProperty("user.name") + ".sock");
+	}
+
+	void serve() throws IOException {
+		Files.deleteIfExists(this.socket);
+		try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(this.socket));
+			System.err.println("jlox daemon listening on " + this.socket);
+
+			// requests mostly wait for their scripts
+			var threads = Thread.ofVirtual().name("jlox-request-", 0);
+			for (;;) {
+				var channel = server.accept();
+				threads.start(() -> {
+					try (channel) {
+						this.handle(channel);
+					} catch (IOException e) {
+						// the client went away mid-request
+					}
+				});
+			}
+		}
+	}
+
+	private void handle(SocketChannel channel) throws IOException {
+		var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+		var directory = Paths.get(readString(in));
+		var path = readString(in);
+		var argc = in.readInt();
+		List<String> args = new ArrayList<>(argc);
+		for (var i = 0; i < argc; i++) {
+			args.add(readString(in));
+		}
+
+		var budget = new Budget(this.fuel, this.timeout, this.allocations);
+		var charset = Charset.defaultCharset();
+		var stdout = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, STDOUT, budget)), true, charset);
+		var stderr = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, STDERR, budget)), true, charset);
+
+		var console = new Console(new FrameInputStream(in), stdout, stderr, charset, Console.Flush.SIZE);
+		var interpreter = new Interpreter(args, console);
+		interpreter.workIn(directory);
+		var task = this.scheduler.submit(path, interpreter, budget,
+				(line, where, message) -> stderr.println("[line " + line + "] Error" + where + ": " + message));
+
+		int status;
+		try {
+			status = task.status.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof NoSuchFileException) {
+				stderr.println("Can't open script '" + path + "'.");
+				status = 66;
+			} else if (e.getCause() instanceof IOException cause) {
+				stderr.println("Can't read script '" + path + "': " + cause.getMessage());
+				status = 74;
+			} else {
+				// an interpreter bug must not take the daemon down with it
+				e.getCause().printStackTrace(stderr);
+				status = 70;
+			}
+		} finally {
+			console.flush();
+		}
+		if (budget.cancelled())
+			System.err.println("jlox daemon cancelled " + path + " for a client that went away");
+
+		stdout.flush();
+		stderr.flush();
+		synchronized (out) {
+			out.writeByte(EXIT);
+			out.writeInt(status);
+			out.flush();
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		var bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static class FrameOutputStream extends OutputStream {
+		private final DataOutputStream out;
+		private final byte tag;
+		// the request's, cancelled when the client can't be written to
+		private final Budget budget;
+
+		FrameOutputStream(DataOutputStream out, byte tag, Budget budget) {
+			this.out = out;
+			this.tag = tag;
+			this.budget = budget;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return;
+			try {
+				synchronized (this.out) {
+					this.out.writeByte(this.tag);
+					this.out.writeInt(len);
+					this.out.write(b, off, len);
+					this.out.flush();
+				}
+			} catch (IOException e) {
+				this.budget.cancel();
+				throw e;
+			}
+		}
+	}
+
+	private static class FrameInputStream extends InputStream {
+		private final DataInputStream in;
+		private int remaining = 0;
+		private boolean eof = false;
+
+		FrameInputStream(DataInputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			var b = new byte[1];
+			return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!this.nextFrame())
+				return -1;
+
+			var n = this.in.read(b, off, Math.min(len, this.remaining));
+			if (n == -1) {
+				this.eof = true;
+				return -1;
+			}
+			this.remaining -= n;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return Math.min(this.remaining, this.in.available());
+		}
+
+		private boolean nextFrame() throws IOException {
+			while (this.remaining == 0 && !this.eof) {
+				try {
+					this.remaining = this.in.readInt();
+				} catch (EOFException e) {
+					this.remaining = 0;
+				}
+				if (this.remaining <= 0) {
+					this.remaining = 0;
+					this.eof = true;
+				}
+			}
+			return !this.eof;
+		}
+	}
+}
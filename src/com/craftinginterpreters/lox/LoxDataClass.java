@@ -0,0 +1,89 @@
+package com.craftinginterpreters.lox;
+
+// A class declared with data Name(field, ...). Calling it takes one argument
+// per field and makes a LoxRecord holding them, in declaration order.
+class LoxDataClass implements LoxCallable {
+	// Where a field was found in a record of this class, kept on the Expr.Get
+	// that reads it, so the next record of the same class is read without
+	// looking the name up. Data classes never change, so it holds for good.
+	//
+	// The slot can't be fixed when the script is resolved: a variable holds
+	// records of any class, and the same name may sit in a different slot in
+	// each, so the class is only known once the record is in hand. A read that
+	// finds the class it cached costs one comparison, about what reading a
+	// local variable does; one that sees a different class than last time
+	// scans the field names again.
+	static class Field {
+		final LoxDataClass class_;
+		final int slot;
+
+		private Field(LoxDataClass class_, int slot) {
+			this.class_ = class_;
+			this.slot = slot;
+		}
+	}
+
+	final String name;
+	final String[] fields;
+
+	LoxDataClass(String name, String[] fields) {
+		this.name = name;
+		this.fields = fields;
+	}
+
+	// where a field is kept in a record, or -1 if there's no such field;
+	// data classes have few fields, so a scan beats hashing the name
+	int slot(String field) {
+		for (var i = 0; i < this.fields.length; i++) {
+			if (this.fields[i].equals(field))
+				return i;
+		}
+		return -1;
+	}
+
+	// the field's slot to cache, or null if there's no such field
+	Field field(String field) {
+		var slot = this.slot(field);
+		return slot < 0 ? null : new Field(this, slot);
+	}
+
+	@Override
+	public int arity() {
+		return this.fields.length;
+	}
+
+	@Override
+	public Object call(Interpreter intp, Object... arguments) {
+		intp.allocate();
+		return new LoxRecord(this, arguments.clone());
+	}
+
+	@Override
+	public Object call0(Interpreter intp) {
+		intp.allocate();
+		return new LoxRecord(this, new Object[0]);
+	}
+
+	@Override
+	public Object call1(Interpreter intp, Object a) {
+		intp.allocate();
+		return new LoxRecord(this, new Object[] {a});
+	}
+
+	@Override
+	public Object call2(Interpreter intp, Object a, Object b) {
+		intp.allocate();
+		return new LoxRecord(this, new Object[] {a, b});
+	}
+
+	@Override
+	public Object call3(Interpreter intp, Object a, Object b, Object c) {
+		intp.allocate();
+		return new LoxRecord(this, new Object[] {a, b, c});
+	}
+
+	@Override
+	public String toString() {
+		return "<class " + this.name + ">";
+	}
+}
@@ -0,0 +1,356 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A source file being edited, kept as a list of units: runs of whole lines
+// that hold complete top-level statements. Top-level statements share no
+// local scopes, so each unit is scanned, parsed and resolved on its own, and
+// an edit only redoes the units it touches. Annotated globals are shared by
+// all of them, so units are type checked against the annotations of the
+// whole document, and all of them again when those change.
+class LoxDocument {
+	static class Diagnostic {
+		// zero-based, as the language server protocol counts them
+		final int line;
+		final int length;
+		final String message;
+
+		Diagnostic(int line, int length, String message) {
+			this.line = line;
+			this.length = length;
+			this.message = message;
+		}
+	}
+
+	private static class Unit {
+		final String text;
+		final int newlines;
+		final List<Stmt> statements;
+		// lines relative to the start of the unit
+		final List<Diagnostic> diagnostics;
+		// from type checking against the document's annotated globals, or
+		// null if it hasn't been yet
+		List<Diagnostic> typeErrors = null;
+
+		Unit(String text, List<Stmt> statements, List<Diagnostic> diagnostics) {
+			this.text = text;
+			this.newlines = countNewlines(text);
+			this.statements = statements;
+			this.diagnostics = diagnostics;
+		}
+	}
+
+	private static class Split {
+		final List<String> units = new ArrayList<>();
+		// whether the text ended between statements
+		boolean clean = true;
+	}
+
+	private final List<Unit> units = new ArrayList<>();
+	// first line of each unit
+	private int[] starts = new int[0];
+	// units analyzed by the last replace or edit; the others were kept
+	private int analyzed = 0;
+	// the annotated globals the units were type checked against
+	private Map<String, TypeChecker.Type> annotations = new HashMap<>();
+
+	LoxDocument(String text) {
+		this.replace(text);
+	}
+
+	void replace(String text) {
+		this.units.clear();
+		for (var piece : split(text).units) {
+			this.units.add(analyze(piece));
+		}
+		this.analyzed = this.units.size();
+		this.reindex();
+	}
+
+	String text() {
+		var builder = new StringBuilder();
+		for (var unit : this.units) {
+			builder.append(unit.text);
+		}
+		return builder.toString();
+	}
+
+	List<Stmt> statements() {
+		var statements = new ArrayList<Stmt>();
+		for (var unit : this.units) {
+			statements.addAll(unit.statements);
+		}
+		return statements;
+	}
+
+	int units() {
+		return this.units.size();
+	}
+
+	int analyzed() {
+		return this.analyzed;
+	}
+
+	List<Diagnostic> diagnostics() {
+		var diagnostics = new ArrayList<Diagnostic>();
+		for (var i = 0; i < this.units.size(); i++) {
+			var unit = this.units.get(i);
+			for (var diagnostic : unit.diagnostics) {
+				diagnostics.add(new Diagnostic(this.starts[i] + diagnostic.line, diagnostic.length, diagnostic.message));
+			}
+			for (var diagnostic : unit.typeErrors) {
+				diagnostics.add(new Diagnostic(this.starts[i] + diagnostic.line, diagnostic.length, diagnostic.message));
+			}
+		}
+		return diagnostics;
+	}
+
+	// replaces the text between two zero-based positions, as a language
+	// server edit does
+	void edit(int startLine, int startColumn, int endLine, int endColumn, String text) {
+		// the unit before as well, in case the edit starts an else that
+		// belongs to it
+		var first = Math.max(0, this.unitAt(startLine) - 1);
+		var last = this.unitAt(endLine);
+
+		var region = new StringBuilder();
+		for (var i = first; i <= last; i++) {
+			region.append(this.units.get(i).text);
+		}
+		var from = offset(region, startLine - this.starts[first], startColumn);
+		var to = offset(region, endLine - this.starts[first], endColumn);
+		region.replace(from, Math.max(from, to), text);
+
+		// an edit that leaves a statement, string or block open runs on into
+		// the units after it
+		Split split;
+		for (;;) {
+			split = split(region);
+			var next = last + 1;
+			if (next >= this.units.size())
+				break;
+			if (split.clean && !startsWithElse(this.units.get(next).text))
+				break;
+			region.append(this.units.get(next).text);
+			last = next;
+		}
+
+		var changed = new ArrayList<Unit>(split.units.size());
+		this.analyzed = 0;
+		for (var i = 0; i < split.units.size(); i++) {
+			var piece = split.units.get(i);
+			var old = first + i <= last ? this.units.get(first + i) : null;
+			if (old != null && old.text.equals(piece)) {
+				changed.add(old);
+			} else {
+				changed.add(analyze(piece));
+				this.analyzed++;
+			}
+		}
+		var replaced = this.units.subList(first, last + 1);
+		replaced.clear();
+		replaced.addAll(changed);
+		this.reindex();
+	}
+
+	private int unitAt(int line) {
+		var low = 0;
+		var high = this.units.size() - 1;
+		while (low < high) {
+			var middle = (low + high + 1) >>> 1;
+			if (this.starts[middle] <= line)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	private void reindex() {
+		if (this.units.isEmpty())
+			this.units.add(analyze(""));
+		if (this.starts.length != this.units.size())
+			this.starts = new int[this.units.size()];
+		var line = 0;
+		for (var i = 0; i < this.units.size(); i++) {
+			this.starts[i] = line;
+			line += this.units.get(i).newlines;
+		}
+		this.typeCheck();
+	}
+
+	// checks the new units, and the others too if an annotation changed
+	private void typeCheck() {
+		var annotations = new HashMap<String, TypeChecker.Type>();
+		for (var unit : this.units) {
+			annotations.putAll(TypeChecker.annotations(unit.statements));
+		}
+		var changed = !annotations.equals(this.annotations);
+		this.annotations = annotations;
+		for (var unit : this.units) {
+			if (unit.typeErrors == null || changed)
+				unit.typeErrors = typeCheck(unit, annotations);
+		}
+	}
+
+	private static List<Diagnostic> typeCheck(Unit unit, Map<String, TypeChecker.Type> annotations) {
+		var diagnostics = new ArrayList<Diagnostic>();
+		// like Lox.run, statements that failed to parse or resolve aren't
+		// checked
+		if (unit.diagnostics.isEmpty())
+			reporting(unit.text, diagnostics, () -> new TypeChecker().check(unit.statements, annotations));
+		return diagnostics;
+	}
+
+	// the offset of a line and column in text, clamped to the text
+	private static int offset(CharSequence text, int line, int column) {
+		var offset = 0;
+		for (var i = 0; i < line; i++) {
+			while (offset < text.length() && text.charAt(offset) != '\n')
+				offset++;
+			if (offset == text.length())
+				return offset;
+			offset++;
+		}
+		var end = offset;
+		while (end < text.length() && text.charAt(end) != '\n')
+			end++;
+		return Math.min(offset + Math.max(0, column), end);
+	}
+
+	// scans, parses and resolves a unit; it is type checked once the
+	// document's annotations are known
+	private static Unit analyze(String text) {
+		var diagnostics = new ArrayList<Diagnostic>();
+		var statements = new ArrayList<Stmt>();
+		reporting(text, diagnostics, () -> {
+			statements.addAll(new Parser(new Scanner(text).scanTokens()).parse());
+			// like Lox.run, statements that failed to parse aren't resolved
+			if (diagnostics.isEmpty())
+				new Resolver(new Interpreter(List.of(), Console.detached())).resolve(statements);
+		});
+		return new Unit(text, statements, diagnostics);
+	}
+
+	// runs a pass over the unit with text, adding the errors it reports
+	private static void reporting(String text, List<Diagnostic> diagnostics, Runnable pass) {
+		var lastLine = Math.max(0, countNewlines(text) - (text.endsWith("\n") ? 1 : 0));
+		var previous = Lox.reporter.get();
+		Lox.reporter.set((line, where, message) -> {
+			// errors at the end of the unit are reported on the line after it
+			var relative = Math.min(Math.max(0, line - 1), lastLine);
+			diagnostics.add(new Diagnostic(relative, lineLength(text, relative), "Error" + where + ": " + message));
+		});
+		try {
+			pass.run();
+		} finally {
+			Lox.reporter.set(previous);
+		}
+	}
+
+	// Cuts text after lines that end a top-level statement: a ';' or '}'
+	// outside any brackets, strings and comments, with no else following.
+	private static Split split(CharSequence text) {
+		var split = new Split();
+		var depth = 0;
+		char quote = 0;
+		var lineComment = false;
+		var blockComment = false;
+		// whether there is a statement since the last cut, and its last character
+		var pending = false;
+		char last = 0;
+		var unitStart = 0;
+
+		for (var i = 0; i < text.length(); i++) {
+			var c = text.charAt(i);
+			var next = i + 1 < text.length() ? text.charAt(i + 1) : 0;
+			if (blockComment) {
+				if (c == '*' && next == '/') {
+					blockComment = false;
+					i++;
+				}
+				continue;
+			}
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+				continue;
+			}
+			if (lineComment && c != '\n')
+				continue;
+
+			switch (c) {
+			case '\n' -> {
+				lineComment = false;
+				if (depth == 0 && pending && (last == ';' || last == '}') && !startsWithElse(text, i + 1)) {
+					split.units.add(text.subSequence(unitStart, i + 1).toString());
+					unitStart = i + 1;
+					pending = false;
+				}
+			}
+			case ' ', '\t', '\r' -> {}
+			case '#' -> lineComment = true;
+			case '/' -> {
+				if (next == '/') {
+					lineComment = true;
+					i++;
+				} else if (next == '*') {
+					blockComment = true;
+					i++;
+				} else {
+					pending = true;
+					last = c;
+				}
+			}
+			default -> {
+				if (c == '"' || c == '\'')
+					quote = c;
+				else if (c == '(' || c == '{' || c == '[')
+					depth++;
+				else if (c == ')' || c == '}' || c == ']')
+					depth = Math.max(0, depth - 1);
+				pending = true;
+				last = c;
+			}
+			}
+		}
+
+		if (unitStart < text.length() || split.units.isEmpty())
+			split.units.add(text.subSequence(unitStart, text.length()).toString());
+		split.clean = !pending && quote == 0 && !blockComment;
+		return split;
+	}
+
+	private static boolean startsWithElse(CharSequence text) {
+		return startsWithElse(text, 0);
+	}
+
+	private static boolean startsWithElse(CharSequence text, int from) {
+		var i = from;
+		while (i < text.length() && Character.isWhitespace(text.charAt(i)))
+			i++;
+		if (i + 4 > text.length() || !text.subSequence(i, i + 4).toString().equals("else"))
+			return false;
+		return i + 4 == text.length() || !Character.isLetterOrDigit(text.charAt(i + 4)) && text.charAt(i + 4) != '_';
+	}
+
+	private static int countNewlines(String text) {
+		var count = 0;
+		for (var i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n')
+				count++;
+		}
+		return count;
+	}
+
+	private static int lineLength(String text, int line) {
+		var start = offset(text, line, 0);
+		var end = start;
+		while (end < text.length() && text.charAt(end) != '\n')
+			end++;
+		return end - start;
+	}
+}
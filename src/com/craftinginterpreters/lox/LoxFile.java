@@ -0,0 +1,306 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// A file opened for reading, one line at a time. Regular files are mapped
+// into memory a window at a time and other files (pipes, devices) are read
+// through one direct buffer, so memory use stays the same however big the
+// file is. Lines are decoded as UTF-8 straight from the window, which is
+// unmapped as soon as it is read past. A script holds no core while it
+// waits on a read that may block (see Budget.waiting).
+class LoxFile extends Mutable implements LoxBuiltin {
+	private static final int WINDOW_SIZE = 1 << 26;
+	private static final int READ_SIZE = 1 << 16;
+	private static final int SCRATCH_SIZE = 1 << 8;
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	// releases a mapped window without waiting for the collector, or null
+	// where the JDK doesn't allow it and the collector has to
+	private static final MethodHandle UNMAP = unmapper();
+
+	// '\n' in every byte, for finding it eight bytes at a time
+	private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+	private final String path;
+	private final FileChannel channel;
+	private final boolean mapped;
+	private long size;
+	private long position = 0;
+	private ByteBuffer window = EMPTY;
+	private ByteBuffer readBuffer = null;
+	private byte[] scratch = new byte[SCRATCH_SIZE];
+	private boolean closed = false;
+
+	private LoxFile(String path, FileChannel channel, boolean mapped) throws IOException {
+		this.path = path;
+		this.channel = channel;
+		this.mapped = mapped;
+		this.size = mapped ? channel.size() : 0;
+	}
+
+	// relative paths are taken from directory
+	static LoxFile open(Path directory, Object arg) {
+		var path = path(arg);
+		try {
+			var file = directory.resolve(path);
+			var channel = FileChannel.open(file, StandardOpenOption.READ);
+			return new LoxFile(path, channel, Files.isRegularFile(file));
+		} catch (IOException e) {
+			throw error("open", path, e);
+		}
+	}
+
+	// budget is the reading script's, or null off its thread
+	static String readFile(Path directory, Object arg, Budget budget) {
+		var path = path(arg);
+		if (budget != null)
+			budget.waiting();
+		try {
+			return new String(Files.readAllBytes(directory.resolve(path)), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw error("read", path, e);
+		} finally {
+			if (budget != null)
+				budget.running();
+		}
+	}
+
+	static void writeFile(Path directory, Object arg, Object text, boolean append) {
+		var path = path(arg);
+		try {
+			if (append)
+				Files.writeString(directory.resolve(path), Interpreter.stringify(text), StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			else
+				Files.writeString(directory.resolve(path), Interpreter.stringify(text), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw error("write", path, e);
+		}
+	}
+
+	private static String path(Object arg) {
+		if (arg instanceof String path)
+			return path;
+		throw new NativeError("File path must be a string.");
+	}
+
+	private static NativeError error(String action, String path, IOException e) {
+		String reason;
+		if (e instanceof NoSuchFileException)
+			reason = "no such file";
+		else if (e instanceof AccessDeniedException)
+			reason = "permission denied";
+		else
+			reason = e.getMessage();
+		return new NativeError("Can't " + action + " '" + path + "': " + reason + ".");
+	}
+
+	// the next line without its line break, or null at the end of the file
+	String readLine(Budget budget) {
+		this.checkOpen();
+		try {
+			// bytes of a line that started in an earlier window
+			var length = 0;
+			var partial = false;
+			for (;;) {
+				var start = this.window.position();
+				var limit = this.window.limit();
+				var end = indexOfNewline(this.window, start, limit);
+				if (end >= 0) {
+					length = this.gather(start, end, length);
+					this.window.position(end + 1);
+					return this.decodeLine(length);
+				}
+
+				length = this.gather(start, limit, length);
+				partial |= limit > start;
+				this.window.position(limit);
+				if (!this.nextWindow(budget))
+					return partial ? this.decodeLine(length) : null;
+			}
+		} catch (IOException e) {
+			throw error("read", this.path, e);
+		}
+	}
+
+	// everything from here to the end of the file
+	String readAll(Budget budget) {
+		this.checkOpen();
+		try {
+			var length = 0;
+			do {
+				length = this.gather(this.window.position(), this.window.limit(), length);
+				this.window.position(this.window.limit());
+			} while (this.nextWindow(budget));
+
+			var text = new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+			this.scratch = new byte[SCRATCH_SIZE];
+			return text;
+		} catch (IOException e) {
+			throw error("read", this.path, e);
+		}
+	}
+
+	void close() {
+		if (this.closed)
+			return;
+		this.closed = true;
+		this.unmap();
+		this.readBuffer = null;
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			throw error("close", this.path, e);
+		}
+	}
+
+	private void checkOpen() {
+		if (this.closed)
+			throw new NativeError("File '" + this.path + "' is closed.");
+	}
+
+	private boolean nextWindow(Budget budget) throws IOException {
+		if (this.mapped) {
+			// pick up whatever was appended since the last look
+			if (this.position >= this.size && (this.size = this.channel.size()) <= this.position)
+				return false;
+			var length = (int) Math.min(WINDOW_SIZE, this.size - this.position);
+			this.unmap();
+			this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, length);
+			this.window.order(ByteOrder.LITTLE_ENDIAN);
+			this.position += length;
+			return true;
+		}
+
+		if (this.readBuffer == null)
+			this.readBuffer = ByteBuffer.allocateDirect(READ_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.readBuffer.clear();
+		int read;
+		if (budget != null)
+			budget.waiting();
+		try {
+			do {
+				read = this.channel.read(this.readBuffer);
+			} while (read == 0);
+		} finally {
+			if (budget != null)
+				budget.running();
+		}
+		if (read < 0) {
+			this.window = EMPTY;
+			return false;
+		}
+		this.readBuffer.flip();
+		this.window = this.readBuffer;
+		return true;
+	}
+
+	// nothing may read the window after this, so it is always replaced
+	private void unmap() {
+		var window = this.window;
+		this.window = EMPTY;
+		if (!this.mapped || window == EMPTY || UNMAP == null)
+			return;
+		try {
+			UNMAP.invokeExact(window);
+		} catch (Throwable e) {
+			// left to the collector
+		}
+	}
+
+	private static MethodHandle unmapper() {
+		try {
+			var unsafe = Class.forName("sun.misc.Unsafe");
+			var instance = unsafe.getDeclaredField("theUnsafe");
+			instance.setAccessible(true);
+			return MethodHandles.lookup()
+					.findVirtual(unsafe, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+					.bindTo(instance.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	// copies window bytes [from, to) after the first length bytes of scratch
+	private int gather(int from, int to, int length) {
+		var count = to - from;
+		if (length + count > this.scratch.length) {
+			var capacity = Math.max(this.scratch.length * 2, length + count);
+			this.scratch = Arrays.copyOf(this.scratch, capacity);
+		}
+		this.window.get(from, this.scratch, length, count);
+		return length + count;
+	}
+
+	private String decodeLine(int length) {
+		if (length > 0 && this.scratch[length - 1] == '\r')
+			length--;
+		return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	// index of the first '\n' in [from, to) of a little-endian buffer, or -1
+	private static int indexOfNewline(ByteBuffer buffer, int from, int to) {
+		var i = from;
+		for (; i + 8 <= to; i += 8) {
+			// the classic zero-byte test on the word xor '\n'; only bytes after
+			// a real match can be flagged wrongly, and the lowest flag wins
+			var word = buffer.getLong(i) ^ NEWLINES;
+			var found = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+			if (found != 0)
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+		}
+		for (; i < to; i++) {
+			if (buffer.get(i) == '\n')
+				return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public Object get(Token name) {
+		var file = this;
+		return switch (name.lexeme) {
+			case "readLine" -> new Native("readLine", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					intp.change(file);
+					return file.readLine(intp.budget());
+				}
+			};
+			case "readAll" -> new Native("readAll", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					intp.change(file);
+					return file.readAll(intp.budget());
+				}
+			};
+			case "close" -> new Native("close", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					intp.change(file);
+					file.close();
+					return null;
+				}
+			};
+			default -> throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "<file " + this.path + ">";
+	}
+}
@@ -0,0 +1,105 @@
+package com.craftinginterpreters.lox;
+
+// A fixed-length array of numbers stored unboxed, for the bulk vec* natives.
+class LoxFloat64Array extends Mutable implements LoxBuiltin, LoxIndexable {
+	// the longest array the JVM will reliably make
+	private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+	final double[] values;
+
+	LoxFloat64Array(double[] values) {
+		this.values = values;
+	}
+
+	// Float64Array(n) makes n zeros, Float64Array(list) copies a list of numbers
+	static LoxFloat64Array create(Object arg) {
+		if (Numbers.isNumber(arg)) {
+			var length = Numbers.value(arg);
+			// checked before the cast, which would turn 1e20 into MAX_VALUE
+			if (!(length >= 0 && length <= MAX_LENGTH) || length != Math.floor(length))
+				throw new NativeError("Float64Array length must be an integer from 0 to " + MAX_LENGTH + ".");
+			return new LoxFloat64Array(new double[(int) length]);
+		}
+
+		if (arg instanceof LoxList list) {
+			var values = new double[list.size()];
+			for (var i = 0; i < values.length; i++) {
+				var number = list.get(i);
+				if (!Numbers.isNumber(number))
+					throw new NativeError("Float64Array elements must be numbers.");
+				values[i] = Numbers.value(number);
+			}
+			return new LoxFloat64Array(values);
+		}
+
+		throw new NativeError("Float64Array expects a length or a list of numbers.");
+	}
+
+	static LoxFloat64Array cast(Object arg) {
+		if (arg instanceof LoxFloat64Array array)
+			return array;
+		throw new NativeError("Expected a Float64Array.");
+	}
+
+	static void checkLengths(LoxFloat64Array a, LoxFloat64Array b) {
+		if (a.values.length != b.values.length)
+			throw new NativeError("Float64Arrays must have the same length.");
+	}
+
+	static double[] output(LoxFloat64Array a, LoxFloat64Array b) {
+		checkLengths(a, b);
+		return new double[a.values.length];
+	}
+
+	static double nonEmpty(LoxFloat64Array array, double result) {
+		if (array.values.length == 0)
+			throw new NativeError("Float64Array is empty.");
+		return result;
+	}
+
+	@Override
+	public Object getIndex(Token bracket, Object index) {
+		return Numbers.box(this.values[this.checkIndex(bracket, index)]);
+	}
+
+	@Override
+	public void setIndex(Token bracket, Object index, Object value) {
+		var i = this.checkIndex(bracket, index);
+		if (!Numbers.isNumber(value))
+			throw new RuntimeError(bracket, "Float64Array elements must be numbers.");
+		this.values[i] = Numbers.value(value);
+	}
+
+	private int checkIndex(Token bracket, Object index) {
+		try {
+			return LoxList.toIndex(index, this.values.length);
+		} catch (NativeError e) {
+			throw new RuntimeError(bracket, e.getMessage());
+		}
+	}
+
+	@Override
+	public Object get(Token name) {
+		var array = this;
+		return switch (name.lexeme) {
+			case "length" -> new Native("length", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return Numbers.box(array.values.length);
+				}
+			};
+			default -> throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		};
+	}
+
+	@Override
+	public String toString() {
+		var builder = new StringBuilder("Float64Array[");
+		for (var i = 0; i < this.values.length; i++) {
+			if (i > 0)
+				builder.append(", ");
+			builder.append(Interpreter.stringify(this.values[i]));
+		}
+		return builder.append("]").toString();
+	}
+}
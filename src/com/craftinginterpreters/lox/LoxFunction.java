@@ -1,46 +1,162 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 class LoxFunction implements LoxCallable {
 	private final Stmt.Function declaration;
+	private final String[] params;
+	private final boolean[] cellParams;
 	private final Environment closure;
 	private final boolean isInitializer;
+	// calling a generator gives a LoxGenerator that runs the body bit by bit
+	private final boolean isGenerator;
 	private final LoxClass class_;
 
 	LoxFunction(
 		Stmt.Function declaration,
 		Environment closure,
+		boolean[] cellParams,
+		boolean isInitializer,
+		boolean isGenerator,
+		LoxClass class_
+	) {
+		this(declaration, parameterNames(declaration), cellParams, closure, isInitializer, isGenerator, class_);
+	}
+
+	private LoxFunction(
+		Stmt.Function declaration,
+		String[] params,
+		boolean[] cellParams,
+		Environment closure,
 		boolean isInitializer,
+		boolean isGenerator,
 		LoxClass class_
 	) {
 		this.declaration = declaration;
+		this.params = params;
+		this.cellParams = cellParams;
 		this.closure = closure;
 		this.isInitializer = isInitializer;
+		this.isGenerator = isGenerator;
 		this.class_ = class_;
 	}
 
+	private static String[] parameterNames(Stmt.Function declaration) {
+		var names = new String[declaration.params.size()];
+		for (var i = 0; i < names.length; i++) {
+			names[i] = declaration.params.get(i).lexeme;
+		}
+		return names;
+	}
+
 	@Override
 	public int arity() {
-		return this.declaration.params.size();
+		return this.params.length;
 	}
 
-	@Override
-	public Object call(Interpreter intp, List<Object> args) {
-		var environment = new Environment(this.closure);
-		for (var i = 0; i < this.arity(); i++) {
-			environment.define(this.declaration.params.get(i), args.get(i));
-		}
+	// the callee frame, for callers that evaluate arguments straight into it
+	Environment frame() {
+		return new Environment(this.closure);
+	}
+
+	void argument(Environment frame, int index, Object value) {
+		this.argument(frame, index, value, null);
+	}
+
+	// a wrong argument is blamed on the call's paren, or with no call in
+	// the script, on the native that made the call
+	void argument(Environment frame, int index, Object value, Token paren) {
+		argument(this.declaration, index, value, paren);
+		frame.define(this.params[index], this.cellParams[index] ? new Cell(value) : value);
+	}
+
+	// the argument checked against the parameter's annotation, for callers
+	// that run the body without a frame (see Inliner)
+	static void argument(Stmt.Function declaration, int index, Object value, Token paren) {
+		var types = declaration.paramTypes;
+		if (types == null || types[index] == null || types[index].accepts(value))
+			return;
+		var message = "Parameter '" + declaration.params.get(index).lexeme + "' must be a " + types[index].name + ".";
+		if (paren == null)
+			throw new NativeError(message);
+		throw new RuntimeError(paren, message);
+	}
 
+	Object invoke(Interpreter intp, Environment frame) {
+		if (this.isGenerator) {
+			intp.allocate();
+			return new LoxGenerator(this.name(), this.declaration.body, frame);
+		}
 		try {
-			intp.executeBlock(this.declaration.body, environment);
+			intp.executeFunction(this, this.declaration.body, frame);
 		} catch (Return ret) {
-			return ret.value;
+			return this.returned(ret.value);
 		}
 		if (this.isInitializer)
 			return this.closure.getAt(0, "this");
 
-		return null;
+		return this.returned(null);
+	}
+
+	private Object returned(Object value) {
+		return returned(this.declaration, value);
+	}
+
+	static Object returned(Stmt.Function declaration, Object value) {
+		var returns = declaration.returns;
+		if (returns != null)
+			returns.guard(declaration.name, "Function '" + declaration.name.lexeme + "' must return a", value);
+		return value;
+	}
+
+	@Override
+	public Object call(Interpreter intp, Object... args) {
+		var frame = this.frame();
+		for (var i = 0; i < this.params.length; i++) {
+			this.argument(frame, i, args[i]);
+		}
+		return this.invoke(intp, frame);
+	}
+
+	@Override
+	public Object call0(Interpreter intp) {
+		return this.invoke(intp, this.frame());
+	}
+
+	@Override
+	public Object call1(Interpreter intp, Object a) {
+		var frame = this.frame();
+		this.argument(frame, 0, a);
+		return this.invoke(intp, frame);
+	}
+
+	@Override
+	public Object call2(Interpreter intp, Object a, Object b) {
+		var frame = this.frame();
+		this.argument(frame, 0, a);
+		this.argument(frame, 1, b);
+		return this.invoke(intp, frame);
+	}
+
+	@Override
+	public Object call3(Interpreter intp, Object a, Object b, Object c) {
+		var frame = this.frame();
+		this.argument(frame, 0, a);
+		this.argument(frame, 1, b);
+		this.argument(frame, 2, c);
+		return this.invoke(intp, frame);
+	}
+
+	LoxFunction copy(DeepCopy copier) {
+		copier.reach(this.closure.globals, this.declaration);
+		return new LoxFunction(this.declaration, this.params, this.cellParams, copier.environment(this.closure),
+				this.isInitializer, this.isGenerator, (LoxClass) copier.copy(this.class_));
+	}
+
+	String name() {
+		return this.declaration.name.lexeme;
+	}
+
+	Stmt.Function declaration() {
+		return this.declaration;
 	}
 
 	@Override
@@ -51,6 +167,9 @@ class LoxFunction implements LoxCallable {
 	LoxFunction bind(LoxInstance instance) {
 		var environment = new Environment(this.closure);
 		environment.define("this", instance);
-		return new LoxFunction(this.declaration, environment, this.isInitializer, class_);
+		if (this.class_.super_ != null)
+			environment.define("super", this.class_.super_);
+		return new LoxFunction(this.declaration, this.params, this.cellParams, environment, this.isInitializer,
+				this.isGenerator, this.class_);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,274 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// What calling a generator function gives: its body, run a piece at a time
+// up to the next yield. Only the statements a yield is nested in (marked by
+// the resolver) are stepped through here, each as a frame that remembers how
+// far it has got. Everything else runs in the interpreter as usual, so a
+// suspended generator is no more than these frames and their environments.
+class LoxGenerator implements LoxBuiltin {
+	private abstract static class Frame {
+		final Environment environment;
+
+		Frame(Environment environment) {
+			this.environment = environment;
+		}
+
+		// runs the statement on until it starts a statement nested in it, or
+		// yields (true), or is done (false)
+		abstract boolean step(LoxGenerator generator, Interpreter intp);
+
+		// called once the frame is done or abandoned
+		void exit(Interpreter intp) {
+		}
+	}
+
+	private static class Statements extends Frame {
+		final List<Stmt> statements;
+		int next = 0;
+
+		Statements(List<Stmt> statements, Environment environment) {
+			super(environment);
+			this.statements = statements;
+		}
+
+		@Override
+		boolean step(LoxGenerator generator, Interpreter intp) {
+			if (this.next == this.statements.size())
+				return false;
+			generator.start(intp, this.statements.get(this.next++), this.environment);
+			return true;
+		}
+	}
+
+	// a while loop, or a for loop with its increment
+	private static class Loop extends Frame {
+		final Expr condition;
+		final Stmt body;
+		final Expr increment;
+		boolean started = false;
+
+		Loop(Expr condition, Stmt body, Expr increment, Environment environment) {
+			super(environment);
+			this.condition = condition;
+			this.body = body;
+			this.increment = increment;
+		}
+
+		@Override
+		boolean step(LoxGenerator generator, Interpreter intp) {
+			if (this.started && this.increment != null)
+				intp.evaluate(this.increment, this.environment);
+			this.started = true;
+			if (!intp.isTruthy(intp.evaluate(this.condition, this.environment)))
+				return false;
+			intp.tick();
+			generator.start(intp, this.body, this.environment);
+			return true;
+		}
+	}
+
+	// for (var i in start..end step by)
+	private static class Range extends Frame {
+		final Stmt.Counted loop;
+		final double end;
+		final double step;
+		double counter;
+
+		Range(Stmt.Counted loop, double start, double end, double step, Environment environment) {
+			super(environment);
+			this.loop = loop;
+			this.counter = start;
+			this.end = end;
+			this.step = step;
+		}
+
+		@Override
+		boolean step(LoxGenerator generator, Interpreter intp) {
+			if (this.step > 0 ? this.counter >= this.end : this.counter <= this.end)
+				return false;
+			intp.declare(this.environment, this.loop.name, Numbers.box(this.counter));
+			this.counter += this.step;
+			intp.tick();
+			generator.start(intp, this.loop.body, this.environment);
+			return true;
+		}
+	}
+
+	// for (var x in items)
+	private static class Each extends Frame {
+		final Stmt.Each loop;
+		final Object items;
+		int index = 0;
+
+		Each(Stmt.Each loop, Object items, Environment environment) {
+			super(environment);
+			this.loop = loop;
+			this.items = items;
+		}
+
+		@Override
+		boolean step(LoxGenerator generator, Interpreter intp) {
+			Object item;
+			if (this.items instanceof LoxList list) {
+				if (this.index == list.size())
+					return false;
+				item = list.get(this.index++);
+			} else if (this.items instanceof LoxFile file) {
+				item = intp.nextLine(file, this.loop.keyword);
+				if (item == null)
+					return false;
+			} else {
+				var items = (LoxGenerator) this.items;
+				if (!items.hasNext(intp, this.loop.keyword))
+					return false;
+				item = items.next(intp, this.loop.keyword);
+			}
+			intp.declare(this.environment, this.loop.name, item);
+			intp.tick();
+			generator.start(intp, this.loop.body, this.environment);
+			return true;
+		}
+
+		@Override
+		void exit(Interpreter intp) {
+			if (this.items instanceof LoxFile file)
+				intp.closeFile(file, this.loop.keyword);
+		}
+	}
+
+	private final String name;
+	private final List<Frame> frames = new ArrayList<>();
+	// the value yielded and not taken yet, if ready
+	private Object value = null;
+	private boolean ready = false;
+	private boolean running = false;
+
+	LoxGenerator(String name, List<Stmt> body, Environment frame) {
+		this.name = name;
+		this.frames.add(new Statements(body, frame));
+	}
+
+	boolean hasNext(Interpreter intp, Token where) {
+		if (this.ready)
+			return true;
+		if (this.running)
+			throw new RuntimeError(where, "Generator is already running.");
+
+		this.running = true;
+		try {
+			while (!this.ready && !this.frames.isEmpty()) {
+				var last = this.frames.size() - 1;
+				if (!this.frames.get(last).step(this, intp))
+					this.frames.remove(last).exit(intp);
+			}
+		} catch (Return ret) {
+			this.exit(intp);
+		} catch (RuntimeException e) {
+			// a generator that failed is done
+			this.exit(intp);
+			throw e;
+		} finally {
+			this.running = false;
+		}
+		return this.ready;
+	}
+
+	// leaves every frame, innermost first
+	private void exit(Interpreter intp) {
+		while (!this.frames.isEmpty()) {
+			this.frames.remove(this.frames.size() - 1).exit(intp);
+		}
+	}
+
+	// the next value, or nil once the generator is done
+	Object next(Interpreter intp, Token where) {
+		if (!this.hasNext(intp, where))
+			return null;
+		var value = this.value;
+		this.value = null;
+		this.ready = false;
+		return value;
+	}
+
+	// starts a statement of the body in the given environment
+	private void start(Interpreter intp, Stmt stmt, Environment environment) {
+		if (!intp.suspends(stmt)) {
+			intp.execute(stmt, environment);
+		} else if (stmt instanceof Stmt.Yield yield) {
+			this.value = yield.value == null ? null : intp.evaluate(yield.value, environment);
+			this.ready = true;
+		} else if (stmt instanceof Stmt.Block block) {
+			var scope = intp.isFlat(block) ? environment : new Environment(environment);
+			this.frames.add(new Statements(block.statements, scope));
+		} else if (stmt instanceof Stmt.If branch) {
+			if (intp.isTruthy(intp.evaluate(branch.condition, environment)))
+				this.start(intp, branch.thenBranch, environment);
+			else if (branch.elseBranch != null)
+				this.start(intp, branch.elseBranch, environment);
+		} else if (stmt instanceof Stmt.While loop) {
+			this.frames.add(new Loop(loop.condition, loop.body, null, environment));
+		} else if (stmt instanceof Stmt.Counted loop) {
+			this.startCounted(intp, loop, environment);
+		} else if (stmt instanceof Stmt.Each loop) {
+			var items = intp.evaluate(loop.iterable, environment);
+			if (!(items instanceof LoxList) && !(items instanceof LoxGenerator) && !(items instanceof LoxFile))
+				throw new RuntimeError(loop.keyword, "Can only loop over a list, a generator or a file.");
+			this.frames.add(new Each(loop, items, new Environment(environment)));
+		} else {
+			throw new IllegalStateException("can't step through " + stmt.getClass().getSimpleName());
+		}
+	}
+
+	// the counter of a counted loop is always stored here, which the
+	// interpreter only does when something reads it
+	private void startCounted(Interpreter intp, Stmt.Counted loop, Environment environment) {
+		var scope = new Environment(environment);
+		if (loop.condition != null) {
+			var start = intp.evaluate(loop.start, scope);
+			if (loop.guard != null)
+				loop.guard.guard(loop.name, "Variable '" + loop.name.lexeme + "' must hold a", start);
+			intp.declare(scope, loop.name, start);
+			this.frames.add(new Loop(loop.condition, loop.body, loop.increment, scope));
+			return;
+		}
+
+		var start = intp.evaluate(loop.start, environment);
+		var end = intp.evaluate(loop.end, environment);
+		var step = loop.step == null ? (Object) 1 : intp.evaluate(loop.step, environment);
+		if (!Numbers.isNumber(start) || !Numbers.isNumber(end))
+			throw new RuntimeError(loop.operator, "Range bounds must be numbers.");
+		if (!Numbers.isNumber(step) || !(Numbers.value(step) > 0 || Numbers.value(step) < 0))
+			throw new RuntimeError(loop.operator, "Range step must be a non-zero number.");
+		this.frames.add(new Range(loop, Numbers.value(start), Numbers.value(end), Numbers.value(step), scope));
+	}
+
+	@Override
+	public Object get(Token name) {
+		var generator = this;
+		// Native has a name of its own
+		var where = name;
+		return switch (name.lexeme) {
+			case "next" -> new Native("next", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return generator.next(intp, where);
+				}
+			};
+			case "done" -> new Native("done", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return !generator.hasNext(intp, where);
+				}
+			};
+			default -> throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "<generator " + this.name + ">";
+	}
+}
@@ -0,0 +1,8 @@
+package com.craftinginterpreters.lox;
+
+// Built-in objects that support the subscript syntax, object[index]
+interface LoxIndexable {
+	Object getIndex(Token bracket, Object index);
+
+	void setIndex(Token bracket, Object index, Object value);
+}
@@ -1,9 +1,10 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-class LoxInstance {
+class LoxInstance extends Mutable {
 	private LoxClass class_;
 	private Map<String, Object> fields = new HashMap<>();
 
@@ -22,6 +23,24 @@ class LoxInstance {
 		throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
 	}
 
+	// the method a property names, or null if a field or nothing goes by it
+	LoxFunction method(String name) {
+		if (this.fields.containsKey(name))
+			return null;
+		return this.class_.findMethod(name);
+	}
+
+	Map<String, Object> fields() {
+		return Collections.unmodifiableMap(this.fields);
+	}
+
+	LoxInstance copy(DeepCopy copier) {
+		var copy = new LoxInstance((LoxClass) copier.copy(this.class_));
+		copier.copied(this, copy);
+		this.fields.forEach((name, value) -> copy.fields.put(name, copier.copy(value)));
+		return copy;
+	}
+
 	void set(Token name, Object value) {
 		this.fields.put(name.lexeme, value);
 	}
@@ -0,0 +1,224 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal language server over stdio: it keeps open documents in sync
+ * through incremental edits and publishes the scanner, parser and resolver
+ * errors of each as diagnostics. Only the parts of a document an edit
+ * touches are analyzed again (see LoxDocument); how many were is logged to
+ * the client after each change.
+ *
+ * Messages are JSON-RPC with Content-Length headers, as the language server
+ * protocol specifies.
+ */
+class LoxLanguageServer {
+	private static final int METHOD_NOT_FOUND = -32601;
+	private static final int INTERNAL_ERROR = -32603;
+	private static final double LOG = 4;
+
+	private final InputStream in;
+	private final OutputStream out;
+	private final Map<String, LoxDocument> documents = new HashMap<>();
+	private boolean shutdown = false;
+
+	LoxLanguageServer(InputStream in, OutputStream out) {
+		this.in = new BufferedInputStream(in);
+		this.out = new BufferedOutputStream(out);
+	}
+
+	// serves until the client says exit, returning the exit status
+	int serve() throws IOException {
+		for (;;) {
+			var content = this.readMessage();
+			if (content == null)
+				return 1;
+
+			var message = (Map<?, ?>) Json.parse(content);
+			var method = (String) message.get("method");
+			var id = message.get("id");
+			var params = (Map<?, ?>) message.get("params");
+			if (method == null)
+				continue;
+			if (method.equals("exit"))
+				return this.shutdown ? 0 : 1;
+
+			try {
+				var result = this.handle(method, params);
+				if (id != null)
+					this.respond(id, result);
+			} catch (UnsupportedOperationException e) {
+				if (id != null)
+					this.respondError(id, METHOD_NOT_FOUND, "Unknown method '" + method + "'.");
+			} catch (RuntimeException e) {
+				// a bad request must not take the server down with it
+				e.printStackTrace();
+				if (id != null)
+					this.respondError(id, INTERNAL_ERROR, String.valueOf(e.getMessage()));
+			}
+		}
+	}
+
+	private Object handle(String method, Map<?, ?> params) throws IOException {
+		switch (method) {
+		case "initialize":
+			var sync = new LinkedHashMap<String, Object>();
+			sync.put("openClose", true);
+			// incremental
+			sync.put("change", 2.0);
+			return Map.of("capabilities", Map.of("textDocumentSync", sync),
+					"serverInfo", Map.of("name", "jlox"));
+		case "shutdown":
+			this.shutdown = true;
+			return null;
+		case "textDocument/didOpen": {
+			var item = (Map<?, ?>) params.get("textDocument");
+			var uri = (String) item.get("uri");
+			var document = new LoxDocument((String) item.get("text"));
+			this.documents.put(uri, document);
+			this.publish(uri, document);
+			return null;
+		}
+		case "textDocument/didChange": {
+			var uri = uri(params);
+			var document = this.documents.get(uri);
+			if (document == null)
+				return null;
+			for (var change : (List<?>) params.get("contentChanges")) {
+				var edit = (Map<?, ?>) change;
+				var text = (String) edit.get("text");
+				var range = (Map<?, ?>) edit.get("range");
+				if (range == null) {
+					document.replace(text);
+					continue;
+				}
+				var start = (Map<?, ?>) range.get("start");
+				var end = (Map<?, ?>) range.get("end");
+				document.edit(number(start, "line"), number(start, "character"),
+						number(end, "line"), number(end, "character"), text);
+			}
+			this.publish(uri, document);
+			return null;
+		}
+		case "textDocument/didClose": {
+			var uri = uri(params);
+			this.documents.remove(uri);
+			// clear the client's diagnostics for it
+			this.notify("textDocument/publishDiagnostics", Map.of("uri", uri, "diagnostics", List.of()));
+			return null;
+		}
+		default:
+			// notifications the server doesn't know are to be ignored
+			if (method.startsWith("$/") || method.equals("initialized") || method.startsWith("textDocument/did"))
+				return null;
+			throw new UnsupportedOperationException(method);
+		}
+	}
+
+	private void publish(String uri, LoxDocument document) throws IOException {
+		this.notify("window/logMessage", Map.of("type", LOG,
+				"message", "Analyzed " + document.analyzed() + " of " + document.units() + " units of " + uri + "."));
+		var diagnostics = new ArrayList<Object>();
+		for (var diagnostic : document.diagnostics()) {
+			var range = Map.of(
+					"start", position(diagnostic.line, 0),
+					"end", position(diagnostic.line, diagnostic.length));
+			diagnostics.add(Map.of(
+					"range", range,
+					"severity", 1.0,
+					"source", "lox",
+					"message", diagnostic.message));
+		}
+		this.notify("textDocument/publishDiagnostics", Map.of("uri", uri, "diagnostics", diagnostics));
+	}
+
+	private static Map<String, Object> position(int line, int character) {
+		return Map.of("line", (double) line, "character", (double) character);
+	}
+
+	private static String uri(Map<?, ?> params) {
+		return (String) ((Map<?, ?>) params.get("textDocument")).get("uri");
+	}
+
+	private static int number(Map<?, ?> object, String key) {
+		return ((Double) object.get(key)).intValue();
+	}
+
+	private void respond(Object id, Object result) throws IOException {
+		var message = new LinkedHashMap<String, Object>();
+		message.put("jsonrpc", "2.0");
+		message.put("id", id);
+		message.put("result", result);
+		this.writeMessage(message);
+	}
+
+	private void respondError(Object id, int code, String text) throws IOException {
+		var message = new LinkedHashMap<String, Object>();
+		message.put("jsonrpc", "2.0");
+		message.put("id", id);
+		message.put("error", Map.of("code", (double) code, "message", text));
+		this.writeMessage(message);
+	}
+
+	private void notify(String method, Object params) throws IOException {
+		var message = new LinkedHashMap<String, Object>();
+		message.put("jsonrpc", "2.0");
+		message.put("method", method);
+		message.put("params", params);
+		this.writeMessage(message);
+	}
+
+	private void writeMessage(Object message) throws IOException {
+		var content = Json.write(message).getBytes(StandardCharsets.UTF_8);
+		this.out.write(("Content-Length: " + content.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		this.out.write(content);
+		this.out.flush();
+	}
+
+	// the content of the next message, or null at the end of the input
+	private String readMessage() throws IOException {
+		var length = -1;
+		for (;;) {
+			var header = this.readHeaderLine();
+			if (header == null)
+				return null;
+			if (header.isEmpty())
+				break;
+			var colon = header.indexOf(':');
+			if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length"))
+				length = Integer.parseInt(header.substring(colon + 1).trim());
+		}
+		if (length < 0)
+			throw new IOException("Message without a Content-Length header.");
+
+		var content = this.in.readNBytes(length);
+		if (content.length < length)
+			return null;
+		return new String(content, StandardCharsets.UTF_8);
+	}
+
+	private String readHeaderLine() throws IOException {
+		var line = new ByteArrayOutputStream();
+		for (;;) {
+			var b = this.in.read();
+			if (b == -1)
+				return null;
+			if (b == '\n')
+				break;
+			if (b != '\r')
+				line.write(b);
+		}
+		return line.toString(StandardCharsets.US_ASCII);
+	}
+}
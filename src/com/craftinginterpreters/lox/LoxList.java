@@ -0,0 +1,191 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// A growable list. Storage follows the contents: nothing while the list is
+// empty, a double[] while it holds only numbers, and an Object[] once
+// anything else is stored in it.
+class LoxList extends Mutable implements LoxBuiltin, LoxIndexable {
+	private static final int INITIAL_CAPACITY = 8;
+
+	private double[] numbers = null;
+	private Object[] objects = null;
+	private int size = 0;
+
+	LoxList() {
+	}
+
+	private LoxList(double[] numbers, Object[] objects, int size) {
+		this.numbers = numbers;
+		this.objects = objects;
+		this.size = size;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	Object get(int index) {
+		if (this.numbers != null)
+			return Numbers.box(this.numbers[index]);
+		return this.objects[index];
+	}
+
+	void set(int index, Object value) {
+		if (this.numbers != null) {
+			if (Numbers.isNumber(value)) {
+				this.numbers[index] = Numbers.value(value);
+				return;
+			}
+			this.generalize(this.numbers.length);
+		}
+		this.objects[index] = value;
+	}
+
+	void append(Object value) {
+		this.insert(this.size, value);
+	}
+
+	void insert(int index, Object value) {
+		if (this.numbers == null && this.objects == null) {
+			if (Numbers.isNumber(value))
+				this.numbers = new double[INITIAL_CAPACITY];
+			else
+				this.objects = new Object[INITIAL_CAPACITY];
+		} else if (this.numbers != null && !Numbers.isNumber(value)) {
+			this.generalize(this.numbers.length);
+		}
+
+		if (this.numbers != null) {
+			if (this.size == this.numbers.length)
+				this.numbers = Arrays.copyOf(this.numbers, this.size * 2);
+			System.arraycopy(this.numbers, index, this.numbers, index + 1, this.size - index);
+			this.numbers[index] = Numbers.value(value);
+		} else {
+			if (this.size == this.objects.length)
+				this.objects = Arrays.copyOf(this.objects, this.size * 2);
+			System.arraycopy(this.objects, index, this.objects, index + 1, this.size - index);
+			this.objects[index] = value;
+		}
+		this.size++;
+	}
+
+	Object remove(int index) {
+		var value = this.get(index);
+		this.size--;
+		if (this.size == 0) {
+			// back to the empty form, whatever was stored before
+			this.numbers = null;
+			this.objects = null;
+		} else if (this.numbers != null) {
+			System.arraycopy(this.numbers, index + 1, this.numbers, index, this.size - index);
+		} else {
+			System.arraycopy(this.objects, index + 1, this.objects, index, this.size - index);
+			this.objects[this.size] = null;
+		}
+		return value;
+	}
+
+	LoxList slice(int start, int end) {
+		if (start == end)
+			return new LoxList();
+		if (this.numbers != null)
+			return new LoxList(Arrays.copyOfRange(this.numbers, start, end), null, end - start);
+		return new LoxList(null, Arrays.copyOfRange(this.objects, start, end), end - start);
+	}
+
+	private void generalize(int capacity) {
+		this.objects = new Object[capacity];
+		for (var i = 0; i < this.size; i++) {
+			this.objects[i] = Numbers.box(this.numbers[i]);
+		}
+		this.numbers = null;
+	}
+
+	@Override
+	public Object getIndex(Token bracket, Object index) {
+		return this.get(this.checkIndex(bracket, index, this.size));
+	}
+
+	@Override
+	public void setIndex(Token bracket, Object index, Object value) {
+		this.set(this.checkIndex(bracket, index, this.size), value);
+	}
+
+	private int checkIndex(Token bracket, Object index, int bound) {
+		try {
+			return toIndex(index, bound);
+		} catch (NativeError e) {
+			throw new RuntimeError(bracket, e.getMessage());
+		}
+	}
+
+	static int toIndex(Object index, int bound) {
+		if (index instanceof Integer number) {
+			if (number < 0 || number >= bound)
+				throw new NativeError("List index out of range.");
+			return number;
+		}
+		// -0, or a whole number too big for an int
+		if (!(index instanceof Double number) || number != Math.floor(number))
+			throw new NativeError("List index must be an integer.");
+		if (number < 0 || number >= bound)
+			throw new NativeError("List index out of range.");
+		return number.intValue();
+	}
+
+	@Override
+	public Object get(Token name) {
+		var list = this;
+		return switch (name.lexeme) {
+			case "length" -> new Native("length", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return Numbers.box(list.size);
+				}
+			};
+			case "append" -> new Native("append", 1) {
+				@Override
+				public Object call1(Interpreter intp, Object value) {
+					intp.change(list);
+					list.append(value);
+					return null;
+				}
+			};
+			case "insert" -> new Native("insert", 2) {
+				@Override
+				public Object call2(Interpreter intp, Object index, Object value) {
+					intp.change(list);
+					list.insert(toIndex(index, list.size + 1), value);
+					return null;
+				}
+			};
+			case "remove" -> new Native("remove", 1) {
+				@Override
+				public Object call1(Interpreter intp, Object index) {
+					intp.change(list);
+					return list.remove(toIndex(index, list.size));
+				}
+			};
+			case "slice" -> new Native("slice", 2) {
+				@Override
+				public Object call2(Interpreter intp, Object start, Object end) {
+					var to = toIndex(end, list.size + 1);
+					return list.slice(toIndex(start, to + 1), to);
+				}
+			};
+			default -> throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		};
+	}
+
+	@Override
+	public String toString() {
+		var builder = new StringBuilder("[");
+		for (var i = 0; i < this.size; i++) {
+			if (i > 0)
+				builder.append(", ");
+			builder.append(Interpreter.stringify(this.get(i)));
+		}
+		return builder.append("]").toString();
+	}
+}
@@ -0,0 +1,247 @@
+package com.craftinginterpreters.lox;
+
+// A hash map keyed by Lox values, with the same equality as ==: numbers,
+// strings and booleans by value, nil, and instances by identity.
+//
+// Entries live in two parallel arrays with open addressing and linear
+// probing; removal shifts the following entries back instead of leaving
+// tombstones.
+class LoxMap extends Mutable implements LoxBuiltin, LoxIndexable {
+	private static final int INITIAL_CAPACITY = 8;
+
+	// stands in for a nil key, since a null slot is an empty one; its hash is
+	// fixed so that iteration order doesn't change from run to run
+	private static final Object NIL = new Object() {
+		@Override
+		public int hashCode() {
+			return 0;
+		}
+	};
+
+	private Object[] keys = new Object[INITIAL_CAPACITY];
+	private Object[] values = new Object[INITIAL_CAPACITY];
+	private int size = 0;
+	private int modifications = 0;
+
+	int size() {
+		return this.size;
+	}
+
+	Object get(Object key) {
+		var slot = this.find(key == null ? NIL : key);
+		return slot < 0 ? null : this.values[slot];
+	}
+
+	boolean contains(Object key) {
+		return this.find(key == null ? NIL : key) >= 0;
+	}
+
+	void put(Object key, Object value) {
+		if (key == null)
+			key = NIL;
+
+		var mask = this.keys.length - 1;
+		var slot = hash(key) & mask;
+		while (this.keys[slot] != null) {
+			if (this.keys[slot].equals(key)) {
+				this.values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		this.size++;
+		this.modifications++;
+		// keep the table at most two thirds full so probe runs stay short
+		if (this.size * 3 > this.keys.length * 2)
+			this.resize(this.keys.length * 2);
+	}
+
+	Object remove(Object key) {
+		var slot = this.find(key == null ? NIL : key);
+		if (slot < 0)
+			return null;
+
+		var value = this.values[slot];
+		var mask = this.keys.length - 1;
+		var hole = slot;
+		for (var i = (slot + 1) & mask; this.keys[i] != null; i = (i + 1) & mask) {
+			// an entry can fill the hole if the hole lies between its home
+			// slot and where it sits now
+			var home = hash(this.keys[i]) & mask;
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				this.keys[hole] = this.keys[i];
+				this.values[hole] = this.values[i];
+				hole = i;
+			}
+		}
+		this.keys[hole] = null;
+		this.values[hole] = null;
+		this.size--;
+		this.modifications++;
+		return value;
+	}
+
+	private int find(Object key) {
+		var mask = this.keys.length - 1;
+		for (var slot = hash(key) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+			if (this.keys[slot].equals(key))
+				return slot;
+		}
+		return -1;
+	}
+
+	private void resize(int capacity) {
+		var oldKeys = this.keys;
+		var oldValues = this.values;
+		this.keys = new Object[capacity];
+		this.values = new Object[capacity];
+
+		var mask = capacity - 1;
+		for (var i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null)
+				continue;
+			var slot = hash(oldKeys[i]) & mask;
+			while (this.keys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			this.keys[slot] = oldKeys[i];
+			this.values[slot] = oldValues[i];
+		}
+	}
+
+	private static int hash(Object key) {
+		long bits;
+		if (key instanceof Double number) {
+			// hash the bits themselves, matching Double.equals
+			bits = Double.doubleToLongBits(number);
+		} else {
+			bits = key.hashCode();
+		}
+		// spread the bits, as linear probing only looks at the low ones
+		bits *= 0x9E3779B97F4A7C15L;
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	private static Object unwrap(Object key) {
+		return key == NIL ? null : key;
+	}
+
+	void forEach(Interpreter intp, LoxCallable callback) {
+		var expected = this.modifications;
+		for (var i = 0; i < this.keys.length; i++) {
+			if (this.keys[i] == null)
+				continue;
+			callback.call2(intp, unwrap(this.keys[i]), this.values[i]);
+			if (this.modifications != expected)
+				throw new NativeError("Map changed during forEach.");
+		}
+	}
+
+	LoxList keys() {
+		var list = new LoxList();
+		for (var key : this.keys) {
+			if (key != null)
+				list.append(unwrap(key));
+		}
+		return list;
+	}
+
+	LoxList values() {
+		var list = new LoxList();
+		for (var i = 0; i < this.keys.length; i++) {
+			if (this.keys[i] != null)
+				list.append(this.values[i]);
+		}
+		return list;
+	}
+
+	@Override
+	public Object getIndex(Token bracket, Object index) {
+		return this.get(index);
+	}
+
+	@Override
+	public void setIndex(Token bracket, Object index, Object value) {
+		this.put(index, value);
+	}
+
+	@Override
+	public Object get(Token name) {
+		var map = this;
+		return switch (name.lexeme) {
+			case "size" -> new Native("size", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return Numbers.box(map.size);
+				}
+			};
+			case "get" -> new Native("get", 1) {
+				@Override
+				public Object call1(Interpreter intp, Object key) {
+					return map.get(key);
+				}
+			};
+			case "put" -> new Native("put", 2) {
+				@Override
+				public Object call2(Interpreter intp, Object key, Object value) {
+					intp.change(map);
+					map.put(key, value);
+					return null;
+				}
+			};
+			case "remove" -> new Native("remove", 1) {
+				@Override
+				public Object call1(Interpreter intp, Object key) {
+					intp.change(map);
+					return map.remove(key);
+				}
+			};
+			case "contains" -> new Native("contains", 1) {
+				@Override
+				public Object call1(Interpreter intp, Object key) {
+					return map.contains(key);
+				}
+			};
+			case "keys" -> new Native("keys", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return map.keys();
+				}
+			};
+			case "values" -> new Native("values", 0) {
+				@Override
+				public Object call0(Interpreter intp) {
+					return map.values();
+				}
+			};
+			case "forEach" -> new Native("forEach", 1) {
+				@Override
+				public Object call1(Interpreter intp, Object callback) {
+					if (!(callback instanceof LoxCallable function) || function.arity() != 2)
+						throw new NativeError("forEach expects a function of a key and a value.");
+					map.forEach(intp, function);
+					return null;
+				}
+			};
+			default -> throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		};
+	}
+
+	@Override
+	public String toString() {
+		var builder = new StringBuilder("{");
+		for (var i = 0; i < this.keys.length; i++) {
+			if (this.keys[i] == null)
+				continue;
+			if (builder.length() > 1)
+				builder.append(", ");
+			builder.append(Interpreter.stringify(unwrap(this.keys[i])));
+			builder.append(": ");
+			builder.append(Interpreter.stringify(this.values[i]));
+		}
+		return builder.append("}").toString();
+	}
+}
@@ -0,0 +1,28 @@
+package com.craftinginterpreters.lox;
+
+// An imported module, whose properties are its global variables
+class LoxModule implements LoxBuiltin {
+	private final String name;
+	final Environment globals;
+
+	LoxModule(String name, Environment globals) {
+		this.name = name;
+		this.globals = globals;
+	}
+
+	LoxModule copy(DeepCopy copier) {
+		return new LoxModule(this.name, copier.environment(this.globals));
+	}
+
+	@Override
+	public Object get(Token name) {
+		if (!this.globals.contains(name.lexeme))
+			throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		return this.globals.getAt(0, name);
+	}
+
+	@Override
+	public String toString() {
+		return "<module " + this.name + ">";
+	}
+}
@@ -0,0 +1,57 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// An instance of a data class: its field values in an array laid out by the
+// class, and nothing else. Records can't be changed once made. Two records
+// are equal when they are of the same class and their fields are equal, so
+// they work as map keys.
+class LoxRecord implements LoxBuiltin {
+	final LoxDataClass class_;
+	private final Object[] values;
+
+	LoxRecord(LoxDataClass class_, Object[] values) {
+		this.class_ = class_;
+		this.values = values;
+	}
+
+	Object[] values() {
+		return this.values.clone();
+	}
+
+	// the value of a field whose slot is known
+	Object at(int slot) {
+		return this.values[slot];
+	}
+
+	@Override
+	public Object get(Token name) {
+		var slot = this.class_.slot(name.lexeme);
+		if (slot < 0)
+			throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		return this.values[slot];
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof LoxRecord record
+				&& record.class_ == this.class_
+				&& Arrays.equals(record.values, this.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * System.identityHashCode(this.class_) + Arrays.hashCode(this.values);
+	}
+
+	@Override
+	public String toString() {
+		var builder = new StringBuilder(this.class_.name).append('(');
+		for (var i = 0; i < this.values.length; i++) {
+			if (i > 0)
+				builder.append(", ");
+			builder.append(Interpreter.stringify(this.values[i]));
+		}
+		return builder.append(')').toString();
+	}
+}
@@ -0,0 +1,119 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A function whose results are remembered, keyed on its arguments. Only calls
+// whose arguments and result are all numbers, strings, booleans or nil are
+// remembered: anything else could be changed behind the cache's back. The
+// least recently used results make way once CAPACITY are kept.
+class MemoizedFunction implements LoxCallable {
+	static final int CAPACITY = 1 << 16;
+
+	// stands in for nil as a key, and for the key of a call with no arguments
+	private static final Object NIL = new Object();
+
+	final LoxCallable function;
+	private final Map<Object, Object> results = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+			return this.size() > CAPACITY;
+		}
+	};
+	long hits = 0;
+	long misses = 0;
+
+	MemoizedFunction(LoxCallable function) {
+		this.function = function;
+	}
+
+	int size() {
+		return this.results.size();
+	}
+
+	@Override
+	public int arity() {
+		return this.function.arity();
+	}
+
+	@Override
+	public Object call(Interpreter intp, Object... args) {
+		for (var arg : args) {
+			if (!isPrimitive(arg))
+				return this.function.call(intp, args);
+		}
+		var key = Arrays.asList(args.clone());
+		var result = this.lookup(key);
+		if (result != null)
+			return this.hit(result);
+		return this.miss(key, this.function.call(intp, args));
+	}
+
+	@Override
+	public Object call0(Interpreter intp) {
+		var result = this.lookup(NIL);
+		if (result != null)
+			return this.hit(result);
+		return this.miss(NIL, this.function.call0(intp));
+	}
+
+	@Override
+	public Object call1(Interpreter intp, Object a) {
+		if (!isPrimitive(a))
+			return this.function.call1(intp, a);
+		var key = a == null ? NIL : a;
+		var result = this.lookup(key);
+		if (result != null)
+			return this.hit(result);
+		return this.miss(key, this.function.call1(intp, a));
+	}
+
+	@Override
+	public Object call2(Interpreter intp, Object a, Object b) {
+		if (!isPrimitive(a) || !isPrimitive(b))
+			return this.function.call2(intp, a, b);
+		var key = Arrays.asList(a, b);
+		var result = this.lookup(key);
+		if (result != null)
+			return this.hit(result);
+		return this.miss(key, this.function.call2(intp, a, b));
+	}
+
+	@Override
+	public Object call3(Interpreter intp, Object a, Object b, Object c) {
+		if (!isPrimitive(a) || !isPrimitive(b) || !isPrimitive(c))
+			return this.function.call3(intp, a, b, c);
+		var key = Arrays.asList(a, b, c);
+		var result = this.lookup(key);
+		if (result != null)
+			return this.hit(result);
+		return this.miss(key, this.function.call3(intp, a, b, c));
+	}
+
+	// parallel workers may call the same function at once
+	private synchronized Object lookup(Object key) {
+		return this.results.get(key);
+	}
+
+	private synchronized Object hit(Object result) {
+		this.hits++;
+		return result == NIL ? null : result;
+	}
+
+	private synchronized Object miss(Object key, Object result) {
+		this.misses++;
+		if (isPrimitive(result))
+			this.results.put(key, result == null ? NIL : result);
+		return result;
+	}
+
+	private static boolean isPrimitive(Object value) {
+		return value == null || Numbers.isNumber(value) || value instanceof String || value instanceof Boolean;
+	}
+
+	@Override
+	public String toString() {
+		return this.function.toString();
+	}
+}
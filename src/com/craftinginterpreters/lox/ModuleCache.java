@@ -0,0 +1,165 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Modules scanned, parsed and resolved, kept for the life of the process so
+// a module imported by many files, or by many daemon runs, is compiled once.
+// A module whose file has changed since is compiled again. Loading is done
+// on a thread pool: a module's imports are started as soon as it is parsed,
+// so independent modules are compiled side by side.
+class ModuleCache {
+	static class Module {
+		final Path path;
+		final long modified;
+		final CompletableFuture<Void> loaded = new CompletableFuture<>();
+		List<Stmt> statements = List.of();
+		final List<Stmt.Import> imports = new ArrayList<>();
+		final List<Path> importPaths = new ArrayList<>();
+		// compile errors, reported again wherever the module is imported
+		final List<CompileError> errors = new ArrayList<>();
+		// holds what the resolver worked out, to be copied into the
+		// interpreters that run the module
+		Interpreter resolution;
+
+		private Module(Path path, long modified) {
+			this.path = path;
+			this.modified = modified;
+		}
+
+		@Override
+		public String toString() {
+			var name = this.path.getFileName().toString();
+			var dot = name.lastIndexOf('.');
+			return dot > 0 ? name.substring(0, dot) : name;
+		}
+	}
+
+	record CompileError(int line, String where, String message) {
+	}
+
+	private static final Map<Path, Module> modules = new ConcurrentHashMap<>();
+	private static final ExecutorService loader = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			Thread.ofPlatform().name("lox-loader-", 0).daemon().factory());
+
+	// The modules the given files reach through their imports, all compiled,
+	// in the order they were reached. Their errors are reported here.
+	static Map<Path, Module> load(List<Path> paths) {
+		var reached = new LinkedHashMap<Path, Module>();
+		var queue = new ArrayDeque<Module>();
+		for (var path : paths) {
+			if (path != null && !reached.containsKey(path)) {
+				var module = request(path);
+				reached.put(path, module);
+				queue.add(module);
+			}
+		}
+
+		while (!queue.isEmpty()) {
+			var module = queue.poll();
+			module.loaded.join();
+			for (var error : module.errors) {
+				Lox.report(error.line, " in " + display(module.path) + error.where, error.message);
+			}
+			for (var path : module.importPaths) {
+				if (path != null && !reached.containsKey(path)) {
+					var imported = request(path);
+					reached.put(path, imported);
+					queue.add(imported);
+				}
+			}
+		}
+		return reached;
+	}
+
+	// the file each import names, or null where there is none, which is an
+	// error
+	static List<Path> locate(List<Stmt.Import> imports, Path directory) {
+		var paths = new ArrayList<Path>(imports.size());
+		for (var stmt : imports) {
+			var path = directory.resolve((String) stmt.path.literal).toAbsolutePath().normalize();
+			if (Files.isRegularFile(path)) {
+				paths.add(path);
+			} else {
+				Lox.error(stmt.path, "Can't open module " + stmt.path.lexeme + ".");
+				paths.add(null);
+			}
+		}
+		return paths;
+	}
+
+	static List<Stmt.Import> imports(List<Stmt> statements) {
+		var imports = new ArrayList<Stmt.Import>();
+		for (var stmt : statements) {
+			if (stmt instanceof Stmt.Import import_)
+				imports.add(import_);
+		}
+		return imports;
+	}
+
+	private static Module request(Path path) {
+		var modified = modified(path);
+		return modules.compute(path, (key, cached) -> {
+			if (cached != null && cached.modified == modified)
+				return cached;
+			var module = new Module(path, modified);
+			loader.execute(() -> compile(module));
+			return module;
+		});
+	}
+
+	private static void compile(Module module) {
+		var previous = Lox.reporter.get();
+		Lox.reporter.set((line, where, message) -> module.errors.add(new CompileError(line, where, message)));
+		try {
+			var source = new String(Files.readAllBytes(module.path), Charset.defaultCharset());
+			var statements = new Parser(new Scanner(source).scanTokens()).parse();
+			if (module.errors.isEmpty()) {
+				module.imports.addAll(imports(statements));
+				module.importPaths.addAll(locate(module.imports, module.path.getParent()));
+				// start on the imports while this one is being resolved
+				for (var path : module.importPaths) {
+					if (path != null)
+						request(path);
+				}
+				module.resolution = new Interpreter(List.of(), Console.detached());
+				new Resolver(module.resolution).resolveProgram(statements);
+			}
+			if (module.errors.isEmpty())
+				module.statements = statements;
+		} catch (IOException e) {
+			module.errors.add(new CompileError(1, "", "Can't read module: " + e.getMessage()));
+		} catch (RuntimeException | StackOverflowError e) {
+			module.errors.add(new CompileError(1, "", "Can't compile module: " + e));
+		} finally {
+			Lox.reporter.set(previous);
+			module.loaded.complete(null);
+		}
+	}
+
+	private static long modified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path).toMillis();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static Path display(Path path) {
+		var here = Paths.get("").toAbsolutePath();
+		return path.startsWith(here) ? here.relativize(path) : path;
+	}
+}
@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// State a script can change: instances, lists, maps, arrays, files and the
+// cells of shared variables. Each object remembers the epoch it was made in,
+// so a parallel call can tell the objects it made itself, which it may
+// change, from the ones it shares with its caller and the other workers.
+abstract class Mutable {
+	// moves on with every parallel call
+	private static final AtomicLong epoch = new AtomicLong();
+
+	final long made = epoch.get();
+
+	// starts a new epoch, returning the one that ends: objects made in it or
+	// before are shared with a parallel call starting now
+	static long nextEpoch() {
+		return epoch.getAndIncrement();
+	}
+}
@@ -1,5 +1,8 @@
 package com.craftinginterpreters.lox;
 
+// Natives take at most three arguments and override the callN matching their
+// arity. The other entry points go through call, which reports a wrong number
+// of arguments from callers that don't check it, like callbacks.
 abstract class Native implements LoxCallable {
 	final String name;
 	private final int arity;
@@ -14,8 +17,20 @@ abstract class Native implements LoxCallable {
 		return this.arity;
 	}
 
+	@Override
+	public Object call(Interpreter intp, Object... args) {
+		if (args.length != this.arity)
+			throw new NativeError("Expected " + this.arity + " arguments but got " + args.length + ".");
+		return switch (args.length) {
+			case 0 -> this.call0(intp);
+			case 1 -> this.call1(intp, args[0]);
+			case 2 -> this.call2(intp, args[0], args[1]);
+			default -> this.call3(intp, args[0], args[1], args[2]);
+		};
+	}
+
 	@Override
 	public String toString() {
 		return "<native fn " + this.name + ">";
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package com.craftinginterpreters.lox;
+
+// Thrown by natives, which have no token to blame; the call site turns it
+// into a RuntimeError pointing at the call.
+class NativeError extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	NativeError(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,140 @@
+package com.craftinginterpreters.lox;
+
+// Converts numbers to and from text the way Lox prints and reads them, which
+// is how Double.toString and Double.parseDouble would, with the ".0" of whole
+// numbers left off. Most numbers a script prints or reads are small whole
+// numbers or short decimals, and those take a quick way here. Everything else
+// goes through the JDK, whose Double.toString gives the shortest text that
+// reads back as the same number.
+//
+// At run time a number is an Integer when it is a whole number that fits in
+// an int, other than -0, and a Double otherwise. Every number is made
+// through box, which keeps to that, so a number has one representation and
+// equals, hashing and printing treat 3 and 3.0 alike. Whole-number +, -, *
+// and % are done on ints, moving to doubles when the result no longer fits,
+// and small whole numbers share their boxes, so counting, indexing and
+// fizzbuzz-like arithmetic allocate next to nothing.
+class Numbers {
+	// Double.toString switches to E notation from here on
+	private static final double PLAIN_LIMIT = 1e7;
+	// whole numbers up to here are exact in a double
+	private static final long EXACT_LIMIT = 1L << 53;
+	// the powers of ten that are exact in a double
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+	};
+
+	// boxes for the small whole numbers scripts count and index with, shared
+	// so arithmetic on them allocates nothing
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1024;
+	private static final Integer[] boxes = new Integer[CACHE_HIGH - CACHE_LOW];
+
+	static {
+		for (var i = CACHE_LOW; i < CACHE_HIGH; i++) {
+			boxes[i - CACHE_LOW] = i;
+		}
+	}
+
+	private Numbers() {
+	}
+
+	static boolean isNumber(Object value) {
+		return value instanceof Integer || value instanceof Double;
+	}
+
+	// the value of a number, which the caller has made sure it is
+	static double value(Object number) {
+		if (number instanceof Integer whole)
+			return whole;
+		return (double) number;
+	}
+
+	static Integer box(int value) {
+		if (value >= CACHE_LOW && value < CACHE_HIGH)
+			return boxes[value - CACHE_LOW];
+		return value;
+	}
+
+	// the result of whole-number arithmetic, as a double if it overflowed
+	static Object box(long value) {
+		var whole = (int) value;
+		if (whole != value)
+			return (double) value;
+		return box(whole);
+	}
+
+	static Object box(double value) {
+		var whole = (int) value;
+		if (whole != value)
+			return value;
+		// -0 is a number of its own
+		if (whole == 0 && Double.doubleToRawLongBits(value) != 0)
+			return value;
+		return box(whole);
+	}
+
+	// left % right as on doubles, in integer arithmetic when both are whole
+	// numbers that fit in an int
+	static double remainder(double left, double right) {
+		var dividend = (int) left;
+		var divisor = (int) right;
+		if (dividend != left || divisor != right || divisor == 0)
+			return left % right;
+		return remainder(dividend, divisor);
+	}
+
+	// the same on ints: a zero result takes the dividend's sign, so it is -0
+	// for a negative one, and % 0 is NaN
+	static double remainder(int dividend, int divisor) {
+		if (divisor == 0)
+			return Double.NaN;
+		var result = dividend % divisor;
+		if (result == 0 && dividend < 0)
+			return -0.0;
+		return result;
+	}
+
+	static String format(Object number) {
+		if (number instanceof Integer whole && whole > -PLAIN_LIMIT && whole < PLAIN_LIMIT)
+			return Integer.toString(whole);
+		return format(value(number));
+	}
+
+	static String format(double value) {
+		if (value == (int) value && Math.abs(value) < PLAIN_LIMIT) {
+			if (value == 0 && Double.doubleToRawLongBits(value) != 0)
+				return "-0";
+			return Integer.toString((int) value);
+		}
+
+		// only whole numbers below PLAIN_LIMIT end in ".0", and they are
+		// done above
+		return Double.toString(value);
+	}
+
+	// the number in text[start, end), which is digits with an optional
+	// fraction, as a number literal is
+	static double parse(String text, int start, int end) {
+		long digits = 0;
+		var scale = 0;
+		var fraction = false;
+		for (var i = start; i < end; i++) {
+			var c = text.charAt(i);
+			if (c == '.') {
+				fraction = true;
+				continue;
+			}
+			digits = digits * 10 + (c - '0');
+			if (fraction)
+				scale++;
+			// beyond this the result needs rounding done right
+			if (digits > EXACT_LIMIT || scale >= POWERS_OF_TEN.length)
+				return Double.parseDouble(text.substring(start, end));
+		}
+
+		// both are exact, so one rounding gives the nearest double
+		return digits / POWERS_OF_TEN[scale];
+	}
+}
@@ -0,0 +1,156 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// parallelMap(fn, items) and parallelReduce(fn, items): a function run over
+// a list, or over the numbers 0 to n - 1, on all cores. The items are split
+// into tasks on a ForkJoinPool, and every thread working on a call gets an
+// interpreter of its own, since an interpreter keeps the environment it is
+// running in. The function can read anything but only change what it made
+// itself; changing state it shares is a runtime error (see Mutable). The
+// workers share the caller's budget, so a call that runs too long is
+// stopped like the script that made it.
+class Parallel {
+	private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	// tasks per thread, so threads that finish early can take over from the
+	// others when items take uneven time
+	private static final int TASKS_PER_THREAD = 8;
+
+	private final Interpreter caller;
+	private final long sharedBefore;
+	private final LoxCallable function;
+	private final LoxList list;
+	private final int size;
+	private final int grain;
+	private final Map<Thread, Interpreter> workers = new ConcurrentHashMap<>();
+
+	private Parallel(Interpreter caller, LoxCallable function, Object items) {
+		this.caller = caller;
+		this.function = function;
+		if (items instanceof LoxList list) {
+			this.list = list;
+			this.size = list.size();
+		} else if (Numbers.isNumber(items) && Numbers.value(items) >= 0
+				&& Numbers.value(items) == Math.floor(Numbers.value(items))) {
+			this.list = null;
+			this.size = (int) Math.min(Numbers.value(items), Integer.MAX_VALUE);
+		} else {
+			throw new NativeError("Expect a list or a count of items.");
+		}
+		this.grain = Math.max(1, this.size / (pool.getParallelism() * TASKS_PER_THREAD));
+		this.sharedBefore = Mutable.nextEpoch();
+	}
+
+	static LoxList map(Interpreter caller, Object function, Object items) {
+		if (!(function instanceof LoxCallable callable) || callable.arity() != 1)
+			throw new NativeError("parallelMap expects a function of one argument.");
+
+		var call = new Parallel(caller, callable, items);
+		var results = new Object[call.size];
+		try {
+			pool.invoke(call.new MapTask(0, call.size, results));
+		} finally {
+			call.done();
+		}
+
+		var list = new LoxList();
+		for (var result : results) {
+			list.append(result);
+		}
+		return list;
+	}
+
+	// the items combined in order but grouped in no set way, so fn should be
+	// associative; nil if there are none
+	static Object reduce(Interpreter caller, Object function, Object items) {
+		if (!(function instanceof LoxCallable callable) || callable.arity() != 2)
+			throw new NativeError("parallelReduce expects a function of two arguments.");
+
+		var call = new Parallel(caller, callable, items);
+		if (call.size == 0)
+			return null;
+		try {
+			return pool.invoke(call.new ReduceTask(0, call.size));
+		} finally {
+			call.done();
+		}
+	}
+
+	// the workers' allocations go back to the caller's budget
+	private void done() {
+		for (var worker : this.workers.values()) {
+			worker.refundAllocations();
+		}
+	}
+
+	private Object item(int index) {
+		return this.list == null ? Numbers.box(index) : this.list.get(index);
+	}
+
+	private Interpreter worker() {
+		return this.workers.computeIfAbsent(Thread.currentThread(), thread -> this.caller.worker(this.sharedBefore));
+	}
+
+	// tasks are never serialized, though ForkJoinTask is Serializable
+	private class MapTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final int end;
+		private final transient Object[] results;
+
+		MapTask(int start, int end, Object[] results) {
+			this.start = start;
+			this.end = end;
+			this.results = results;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.end - this.start > Parallel.this.grain) {
+				var middle = (this.start + this.end) >>> 1;
+				invokeAll(new MapTask(this.start, middle, this.results), new MapTask(middle, this.end, this.results));
+				return;
+			}
+
+			var worker = Parallel.this.worker();
+			for (var i = this.start; i < this.end; i++) {
+				this.results[i] = Parallel.this.function.call1(worker, Parallel.this.item(i));
+			}
+		}
+	}
+
+	private class ReduceTask extends RecursiveTask<Object> {
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final int end;
+
+		ReduceTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Object compute() {
+			if (this.end - this.start > Parallel.this.grain) {
+				var middle = (this.start + this.end) >>> 1;
+				var left = new ReduceTask(this.start, middle);
+				left.fork();
+				var right = new ReduceTask(middle, this.end).compute();
+				return Parallel.this.function.call2(Parallel.this.worker(), left.join(), right);
+			}
+
+			var worker = Parallel.this.worker();
+			var result = Parallel.this.item(this.start);
+			for (var i = this.start + 1; i < this.end; i++) {
+				result = Parallel.this.function.call2(worker, result, Parallel.this.item(i));
+			}
+			return result;
+		}
+	}
+}
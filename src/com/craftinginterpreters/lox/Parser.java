@@ -1,455 +1,637 @@
-package com.craftinginterpreters.lox;
-
-import java.util.Arrays;
-import java.util.List;
-import java.util.ArrayList;
-
-class Parser {
-	private final List<Token> tokens;
-	private int current = 0;
-
-	Parser(List<Token> tokens) {
-		this.tokens = tokens;
-	}
-
-	List<Stmt> parse() {
-		List<Stmt> statements = new ArrayList<>();
-		while (!this.isAtEnd()) {
-			statements.add(this.declaration());
-		}
-		return statements;
-	}
-
-	private Stmt declaration() {
-		try {
-			if (this.match(TokenType.VAR))
-				return this.varDeclaration();
-			if (this.match(TokenType.FUN))
-				return this.function("function");
-			if (this.match(TokenType.CLASS))
-				return this.classDeclaration();
-			return this.statement();
-		} catch (ParseError e) {
-			this.synchronize();
-			return null;
-		}
-	}
-
-	private Stmt varDeclaration() {
-		Token name = this.consume(TokenType.IDENTIFIER, "Expect variable name.");
-
-		Expr initializer = null;
-		if (this.match(TokenType.EQUAL))
-			initializer = this.expression();
-
-		this.consume(TokenType.SEMICOLON, "Expect ';' after declaration");
-		return new Stmt.Var(name, initializer);
-	}
-
-	private Stmt.Function function(String kind) {
-		Token name = this.consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
-
-		this.consume(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
-		var parameters = new ArrayList<Token>();
-		if (!this.check(TokenType.RIGHT_PAREN)) {
-			do {
-				if (parameters.size() >= 255)
-					this.error(this.peek(), "Can't have more than 255 arguments");
-				parameters.add(this.consume(TokenType.IDENTIFIER, "Expect parameter name."));
-			} while (this.match(TokenType.COMMA));
-		}
-		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
-
-		this.consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
-		var block = this.block();
-		return new Stmt.Function(name, parameters, block);
-	}
-
-	private Stmt classDeclaration() {
-		var name = this.consume(TokenType.IDENTIFIER, "Expect class name.");
-
-		Expr.Variable super_ = null;
-		if (this.match(TokenType.LESS)) {
-			var superToken = this.consume(TokenType.IDENTIFIER, "Expect superclass name after '<'");
-			super_ = new Expr.Variable(superToken);
-		}
-
-		this.consume(TokenType.LEFT_BRACE, "Expect '{' after class head");
-
-		var methods = new ArrayList<Stmt.Function>();
-		while (!this.check(TokenType.RIGHT_BRACE) && !this.isAtEnd()) {
-			methods.add(this.function("method"));
-		}
-
-		this.consume(TokenType.RIGHT_BRACE, "Expect '}' after class body");
-		return new Stmt.Class(name, super_, methods);
-	}
-
-	private Stmt statement() {
-		if (this.match(TokenType.LEFT_BRACE))
-			return new Stmt.Block(this.block());
-		if (this.match(TokenType.PRINT))
-			return this.printStatement();
-		if (this.match(TokenType.IF))
-			return this.ifStatement();
-		if (this.match(TokenType.WHILE))
-			return this.whileStatement();
-		if (this.match(TokenType.FOR))
-			return this.forStatement();
-		if (this.match(TokenType.RETURN))
-			return this.returnStatement();
-		return this.expressionStatement();
-	}
-
-	private Stmt printStatement() {
-		Expr value = this.expression();
-		this.consume(TokenType.SEMICOLON, "Expect ';' after value.");
-		return new Stmt.Print(value);
-	}
-
-	private Stmt expressionStatement() {
-		Expr expr = this.expression();
-		this.consume(TokenType.SEMICOLON, "Expect ';' after expression.");
-		return new Stmt.Expression(expr);
-	}
-
-	private Stmt ifStatement() {
-		this.consume(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
-		Expr condition = this.expression();
-		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
-
-		Stmt thenBranch = this.statement();
-
-		Stmt elseBranch = null;
-		if (this.match(TokenType.ELSE))
-			elseBranch = this.statement();
-
-		return new Stmt.If(condition, thenBranch, elseBranch);
-	}
-
-	private Stmt whileStatement() {
-		this.consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
-		Expr condition = this.expression();
-		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
-
-		Stmt body = this.statement();
-		return new Stmt.While(condition, body);
-	}
-
-	private Stmt forStatement() {
-		this.consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
-
-		Stmt initializer;
-		if (this.match(TokenType.SEMICOLON)) {
-			initializer = null;
-		} else if (this.match(TokenType.VAR)) {
-			initializer = this.varDeclaration();
-		} else {
-			initializer = this.expressionStatement();
-		}
-
-		Expr condition = null;
-		if (!this.check(TokenType.SEMICOLON)) {
-			condition = this.expression();
-		}
-		this.consume(TokenType.SEMICOLON, "Expect ';' after loop condition.");
-
-		Expr increment = null;
-		if (!this.check(TokenType.RIGHT_PAREN)) {
-			increment = this.expression();
-		}
-		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after for clauses.");
-
-		Stmt body = this.statement();
-
-		if (increment != null)
-			body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
-
-		if (condition == null)
-			condition = new Expr.Literal(true);
-		body = new Stmt.While(condition, body);
-
-		if (initializer != null)
-			body = new Stmt.Block(Arrays.asList(initializer, body));
-
-		return body;
-	}
-
-	private List<Stmt> block() {
-		List<Stmt> statements = new ArrayList<>();
-
-		while (!this.check(TokenType.RIGHT_BRACE) && !this.isAtEnd()) {
-			statements.add(this.declaration());
-		}
-
-		this.consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
-		return statements;
-	}
-
-	private Stmt returnStatement() {
-		var keyword = this.previous();
-		Expr value = null;
-
-		if (!this.check(TokenType.SEMICOLON))
-			value = this.expression();
-		this.consume(TokenType.SEMICOLON, "Expect ';' after return value.");
-		return new Stmt.Return(keyword, value);
-	}
-
-	private Expr expression() {
-		return this.assignment();
-	}
-
-	private Expr assignment() {
-		Expr expr = this.or();
-
-		if (this.match(TokenType.EQUAL)) {
-			Token equals = this.previous();
-			Expr value = this.assignment();
-			if (expr instanceof Expr.Variable) {
-				Token name = ((Expr.Variable) expr).name;
-				return new Expr.Assign(name, value);
-			} else if (expr instanceof Expr.Get) {
-				var get = (Expr.Get) expr;
-				return new Expr.Set(get.object, get.name, value);
-			} else {
-				this.error(equals, "Invalid assignment target");
-			}
-		}
-
-		return expr;
-	}
-
-	private Expr or() {
-		Expr expr = this.and();
-
-		while (this.match(TokenType.OR)) {
-			Token operator = this.previous();
-			Expr right = this.and();
-			expr = new Expr.Logical(expr, operator, right);
-		}
-
-		return expr;
-	}
-
-	private Expr and() {
-		Expr expr = this.equality();
-
-		while (this.match(TokenType.AND)) {
-			Token operator = this.previous();
-			Expr right = this.equality();
-			expr = new Expr.Logical(expr, operator, right);
-		}
-
-		return expr;
-	}
-
-	private Expr equality() {
-		Expr expr = this.comparison();
-
-		while (this.match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-			Token operator = this.previous();
-			Expr right = this.comparison();
-			expr = new Expr.Binary(expr, operator, right);
-		}
-
-		return expr;
-	}
-
-	private Expr comparison() {
-		Expr expr = this.term();
-
-		while (this.match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
-			Token operator = this.previous();
-			Expr right = this.term();
-			expr = new Expr.Binary(expr, operator, right);
-		}
-
-		return expr;
-	}
-
-	private Expr term() {
-		Expr expr = this.factor();
-
-		while (this.match(TokenType.PLUS, TokenType.MINUS)) {
-			Token operator = this.previous();
-			Expr right = this.factor();
-			expr = new Expr.Binary(expr, operator, right);
-		}
-
-		return expr;
-	}
-
-	private Expr factor() {
-		Expr expr = this.unary();
-
-		while (this.match(TokenType.STAR, TokenType.SLASH, TokenType.PERCENT)) {
-			Token operator = this.previous();
-			Expr right = this.unary();
-			expr = new Expr.Binary(expr, operator, right);
-		}
-
-		return expr;
-	}
-
-	private Expr unary() {
-		if (this.match(TokenType.BANG, TokenType.MINUS)) {
-			Token operator = this.previous();
-			Expr right = this.unary();
-			return new Expr.Unary(operator, right);
-		}
-
-		return this.power();
-	}
-
-	private Expr power() {
-		Expr expr = this.call();
-
-		if (this.match(TokenType.STAR_STAR)) {
-			Token operator = this.previous();
-			Expr right = this.unary();
-			expr = new Expr.Binary(expr, operator, right);
-		}
-
-		return expr;
-	}
-
-	private Expr call() {
-		Expr expr = this.primary();
-
-		while (true) {
-			if (this.match(TokenType.LEFT_PAREN)) {
-				expr = this.finishCall(expr);
-			} else if (this.match(TokenType.DOT)) {
-				var name = this.consume(TokenType.IDENTIFIER, "Expect property name after '.'.");
-				expr = new Expr.Get(expr, name);
-			} else {
-				break;
-			}
-		}
-
-		return expr;
-	}
-
-	private Expr finishCall(Expr callee) {
-		List<Expr> arguments = new ArrayList<>();
-		if (!this.check(TokenType.RIGHT_PAREN)) {
-			do {
-				if (arguments.size() >= 255)
-					this.error(this.peek(), "Can't have more than 255 arguments.");
-				arguments.add(this.expression());
-			} while (this.match(TokenType.COMMA));
-		}
-
-		Token paren = this.consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments");
-		return new Expr.Call(callee, paren, arguments);
-	}
-
-	private Expr primary() {
-		if (this.match(TokenType.TRUE))
-			return new Expr.Literal(true);
-		if (this.match(TokenType.FALSE))
-			return new Expr.Literal(false);
-		if (this.match(TokenType.NIL))
-			return new Expr.Literal(null);
-
-		if (this.match(TokenType.NUMBER, TokenType.STRING))
-			return new Expr.Literal(this.previous().literal);
-
-		if (this.match(TokenType.IDENTIFIER))
-			return new Expr.Variable(this.previous());
-
-		if (this.match(TokenType.THIS))
-			return new Expr.This(this.previous());
-
-		if (this.match(TokenType.SUPER)) {
-			var keyword = this.previous();
-			this.consume(TokenType.DOT, "Expect '.' after super");
-			var method = this.consume(TokenType.IDENTIFIER,
-					"Expect superclass method name");
-			return new Expr.Super(keyword, method);
-		}
-
-		if (this.match(TokenType.LEFT_PAREN)) {
-			Expr expr = this.expression();
-			this.consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-			return new Expr.Grouping(expr);
-		}
-
-		throw this.error(this.peek(), "Expect expression.");
-	}
-
-	private boolean match(TokenType... types) {
-		for (TokenType type : types) {
-			if (this.check(type)) {
-				this.advance();
-				return true;
-			}
-		}
-		return false;
-	}
-
-	private Token consume(TokenType type, String message) {
-		if (this.check(type))
-			return this.advance();
-
-		throw this.error(this.peek(), message);
-	}
-
-	private boolean check(TokenType type) {
-		if (this.isAtEnd())
-			return false;
-		return this.peek().type == type;
-	}
-
-	private Token advance() {
-		if (!this.isAtEnd())
-			this.current++;
-		return this.previous();
-	}
-
-	private boolean isAtEnd() {
-		return this.peek().type == TokenType.EOF;
-	}
-
-	private Token peek() {
-		return this.tokens.get(this.current);
-	}
-
-	private Token previous() {
-		return this.tokens.get(this.current - 1);
-	}
-
-	private ParseError error(Token token, String message) {
-		Lox.error(token, message);
-		return new ParseError();
-	}
-
-	private void synchronize() {
-		this.advance();
-
-		while (!this.isAtEnd()) {
-			if (this.previous().type == TokenType.SEMICOLON)
-				return;
-
-			switch (this.peek().type) {
-			case CLASS:
-			case FUN:
-			case VAR:
-			case FOR:
-			case IF:
-			case WHILE:
-			case PRINT:
-			case RETURN:
-				return;
-			default:
-				break;
-			}
-
-			this.advance();
-		}
-	}
-
-	private static class ParseError extends RuntimeException {
-	}
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+
+class Parser {
+	private final List<Token> tokens;
+	private int current = 0;
+
+	Parser(List<Token> tokens) {
+		this.tokens = tokens;
+	}
+
+	List<Stmt> parse() {
+		List<Stmt> statements = new ArrayList<>();
+		while (!this.isAtEnd()) {
+			// imports are only allowed here, so they can all be found before
+			// the program runs
+			if (this.match(TokenType.IMPORT))
+				statements.add(this.importDeclaration());
+			else
+				statements.add(this.declaration());
+		}
+		return statements;
+	}
+
+	// import "path"; or import "path" as name;
+	private Stmt importDeclaration() {
+		var keyword = this.previous();
+		try {
+			var path = this.consume(TokenType.STRING, "Expect module path after 'import'.");
+			Token name;
+			if (this.checkWord(0, "as")) {
+				this.advance();
+				name = this.consume(TokenType.IDENTIFIER, "Expect module name after 'as'.");
+			} else {
+				name = new Token(TokenType.IDENTIFIER, moduleName((String) path.literal), null, path.line);
+				if (!isIdentifier(name.lexeme))
+					throw this.error(path, "Module file name isn't a valid name; use 'as'.");
+			}
+			this.consume(TokenType.SEMICOLON, "Expect ';' after import.");
+			return new Stmt.Import(keyword, path, name);
+		} catch (ParseError e) {
+			this.synchronize();
+			return null;
+		}
+	}
+
+	// the file name without directories and extension: "lib/math.lox" is math
+	private static String moduleName(String path) {
+		var start = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+		var end = path.lastIndexOf('.');
+		return path.substring(start, end > start ? end : path.length());
+	}
+
+	private static boolean isIdentifier(String name) {
+		if (name.isEmpty() || Scanner.isKeyword(name))
+			return false;
+		for (var i = 0; i < name.length(); i++) {
+			var c = name.charAt(i);
+			var letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+			if (!letter && !(i > 0 && c >= '0' && c <= '9'))
+				return false;
+		}
+		return true;
+	}
+
+	private Stmt declaration() {
+		try {
+			if (this.match(TokenType.VAR))
+				return this.varDeclaration();
+			if (this.match(TokenType.FUN))
+				return this.function("function");
+			if (this.match(TokenType.CLASS))
+				return this.classDeclaration();
+			// data is a keyword only in front of a name
+			if (this.checkWord(0, "data") && this.tokens.get(this.current + 1).type == TokenType.IDENTIFIER) {
+				this.advance();
+				return this.dataDeclaration();
+			}
+			return this.statement();
+		} catch (ParseError e) {
+			this.synchronize();
+			return null;
+		}
+	}
+
+	private Stmt varDeclaration() {
+		Token name = this.consume(TokenType.IDENTIFIER, "Expect variable name.");
+		var type = this.annotation();
+
+		Expr initializer = null;
+		if (this.match(TokenType.EQUAL))
+			initializer = this.expression();
+
+		this.consume(TokenType.SEMICOLON, "Expect ';' after declaration");
+		return new Stmt.Var(name, type, initializer);
+	}
+
+	private Stmt.Function function(String kind) {
+		Token name = this.consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
+
+		this.consume(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
+		var parameters = new ArrayList<Token>();
+		var types = new ArrayList<Token>();
+		if (!this.check(TokenType.RIGHT_PAREN)) {
+			do {
+				if (parameters.size() >= 255)
+					this.error(this.peek(), "Can't have more than 255 arguments");
+				parameters.add(this.consume(TokenType.IDENTIFIER, "Expect parameter name."));
+				types.add(this.annotation());
+			} while (this.match(TokenType.COMMA));
+		}
+		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
+		var returnType = this.annotation();
+
+		this.consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
+		var block = this.block();
+		return new Stmt.Function(name, parameters, types, returnType, block);
+	}
+
+	// the type after a name, as in var x: num, or null if there is none
+	private Token annotation() {
+		if (!this.match(TokenType.COLON))
+			return null;
+		return this.consume(TokenType.IDENTIFIER, "Expect type after ':'.");
+	}
+
+	private Stmt classDeclaration() {
+		var name = this.consume(TokenType.IDENTIFIER, "Expect class name.");
+
+		Expr.Variable super_ = null;
+		if (this.match(TokenType.LESS)) {
+			var superToken = this.consume(TokenType.IDENTIFIER, "Expect superclass name after '<'");
+			super_ = new Expr.Variable(superToken);
+		}
+
+		this.consume(TokenType.LEFT_BRACE, "Expect '{' after class head");
+
+		var methods = new ArrayList<Stmt.Function>();
+		while (!this.check(TokenType.RIGHT_BRACE) && !this.isAtEnd()) {
+			methods.add(this.function("method"));
+		}
+
+		this.consume(TokenType.RIGHT_BRACE, "Expect '}' after class body");
+		return new Stmt.Class(name, super_, methods);
+	}
+
+	private Stmt dataDeclaration() {
+		var name = this.consume(TokenType.IDENTIFIER, "Expect data class name.");
+
+		this.consume(TokenType.LEFT_PAREN, "Expect '(' after data class name.");
+		var fields = new ArrayList<Token>();
+		if (!this.check(TokenType.RIGHT_PAREN)) {
+			do {
+				if (fields.size() >= 255)
+					this.error(this.peek(), "Can't have more than 255 fields.");
+				var field = this.consume(TokenType.IDENTIFIER, "Expect field name.");
+				for (var other : fields) {
+					if (other.lexeme.equals(field.lexeme))
+						this.error(field, "Already a field with this name in this data class.");
+				}
+				fields.add(field);
+			} while (this.match(TokenType.COMMA));
+		}
+		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after fields.");
+		this.consume(TokenType.SEMICOLON, "Expect ';' after data class declaration.");
+		return new Stmt.Data(name, fields);
+	}
+
+	private Stmt statement() {
+		if (this.match(TokenType.IMPORT))
+			throw this.error(this.previous(), "Can only import at the top level of a file.");
+		if (this.match(TokenType.LEFT_BRACE))
+			return new Stmt.Block(this.block());
+		if (this.match(TokenType.PRINT))
+			return this.printStatement();
+		if (this.match(TokenType.IF))
+			return this.ifStatement();
+		if (this.match(TokenType.WHILE))
+			return this.whileStatement();
+		if (this.match(TokenType.FOR))
+			return this.forStatement();
+		if (this.match(TokenType.RETURN))
+			return this.returnStatement();
+		if (this.match(TokenType.YIELD))
+			return this.yieldStatement();
+		return this.expressionStatement();
+	}
+
+	private Stmt printStatement() {
+		Expr value = this.expression();
+		this.consume(TokenType.SEMICOLON, "Expect ';' after value.");
+		return new Stmt.Print(value);
+	}
+
+	private Stmt expressionStatement() {
+		Expr expr = this.expression();
+		this.consume(TokenType.SEMICOLON, "Expect ';' after expression.");
+		return new Stmt.Expression(expr);
+	}
+
+	private Stmt ifStatement() {
+		this.consume(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
+		Expr condition = this.expression();
+		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
+
+		Stmt thenBranch = this.statement();
+
+		Stmt elseBranch = null;
+		if (this.match(TokenType.ELSE))
+			elseBranch = this.statement();
+
+		return new Stmt.If(condition, thenBranch, elseBranch);
+	}
+
+	private Stmt whileStatement() {
+		this.consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
+		Expr condition = this.expression();
+		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
+
+		Stmt body = this.statement();
+		return new Stmt.While(condition, body);
+	}
+
+	private Stmt forStatement() {
+		this.consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
+		if (this.check(TokenType.VAR) && this.checkWord(2, "in"))
+			return this.rangeStatement();
+
+		Stmt initializer;
+		if (this.match(TokenType.SEMICOLON)) {
+			initializer = null;
+		} else if (this.match(TokenType.VAR)) {
+			initializer = this.varDeclaration();
+		} else {
+			initializer = this.expressionStatement();
+		}
+
+		Expr condition = null;
+		if (!this.check(TokenType.SEMICOLON)) {
+			condition = this.expression();
+		}
+		this.consume(TokenType.SEMICOLON, "Expect ';' after loop condition.");
+
+		Expr increment = null;
+		if (!this.check(TokenType.RIGHT_PAREN)) {
+			increment = this.expression();
+		}
+		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after for clauses.");
+
+		Stmt body = this.statement();
+
+		var counted = this.countedLoop(initializer, condition, increment, body);
+		if (counted != null)
+			return counted;
+
+		if (increment != null)
+			body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
+
+		if (condition == null)
+			condition = new Expr.Literal(true);
+		body = new Stmt.While(condition, body);
+
+		if (initializer != null)
+			body = new Stmt.Block(Arrays.asList(initializer, body));
+
+		return body;
+	}
+
+	// for (var i in start..end step by), where in and step are only keywords
+	// here, or for (var x in items) over a list or a generator
+	private Stmt rangeStatement() {
+		this.consume(TokenType.VAR, "Expect 'var'.");
+		Token name = this.consume(TokenType.IDENTIFIER, "Expect variable name.");
+		Token keyword = this.advance();
+
+		Expr start = this.expression();
+		if (this.match(TokenType.RIGHT_PAREN))
+			return new Stmt.Each(name, keyword, start, this.statement());
+
+		Token operator = this.consume(TokenType.DOT_DOT, "Expect '..' in range.");
+		Expr end = this.expression();
+
+		Expr step = null;
+		if (this.checkWord(0, "step")) {
+			this.advance();
+			step = this.expression();
+		}
+		this.consume(TokenType.RIGHT_PAREN, "Expect ')' after range.");
+
+		Stmt body = this.statement();
+		return new Stmt.Counted(name, null, start, operator, end, step, body, null, null);
+	}
+
+	// for (var i = start; i < end; i = i + step) with a number literal step,
+	// or null for any other for loop
+	private Stmt countedLoop(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+		if (!(initializer instanceof Stmt.Var var) || var.initializer == null)
+			return null;
+		var name = var.name.lexeme;
+
+		if (!(condition instanceof Expr.Binary test) || !isVariable(test.left, name))
+			return null;
+		switch (test.operator.type) {
+			case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL -> {}
+			default -> {
+				return null;
+			}
+		}
+
+		if (!(increment instanceof Expr.Assign assign) || !assign.name.lexeme.equals(name))
+			return null;
+		if (!(assign.value instanceof Expr.Binary sum) || !isVariable(sum.left, name))
+			return null;
+		if (!(sum.right instanceof Expr.Literal literal) || !Numbers.isNumber(literal.value))
+			return null;
+		var step = Numbers.value(literal.value);
+		if (sum.operator.type == TokenType.MINUS)
+			step = -step;
+		else if (sum.operator.type != TokenType.PLUS)
+			return null;
+
+		return new Stmt.Counted(var.name, var.type, var.initializer, test.operator, test.right,
+				new Expr.Literal(Numbers.box(step)), body, condition, increment);
+	}
+
+	private static boolean isVariable(Expr expr, String name) {
+		return expr instanceof Expr.Variable variable && variable.name.lexeme.equals(name);
+	}
+
+	private List<Stmt> block() {
+		List<Stmt> statements = new ArrayList<>();
+
+		while (!this.check(TokenType.RIGHT_BRACE) && !this.isAtEnd()) {
+			statements.add(this.declaration());
+		}
+
+		this.consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
+		return statements;
+	}
+
+	private Stmt returnStatement() {
+		var keyword = this.previous();
+		Expr value = null;
+
+		if (!this.check(TokenType.SEMICOLON))
+			value = this.expression();
+		this.consume(TokenType.SEMICOLON, "Expect ';' after return value.");
+		return new Stmt.Return(keyword, value);
+	}
+
+	private Stmt yieldStatement() {
+		var keyword = this.previous();
+		Expr value = null;
+
+		if (!this.check(TokenType.SEMICOLON))
+			value = this.expression();
+		this.consume(TokenType.SEMICOLON, "Expect ';' after yielded value.");
+		return new Stmt.Yield(keyword, value);
+	}
+
+	private Expr expression() {
+		return this.assignment();
+	}
+
+	private Expr assignment() {
+		Expr expr = this.or();
+
+		if (this.match(TokenType.EQUAL)) {
+			Token equals = this.previous();
+			Expr value = this.assignment();
+			if (expr instanceof Expr.Variable) {
+				Token name = ((Expr.Variable) expr).name;
+				return new Expr.Assign(name, value);
+			} else if (expr instanceof Expr.Get) {
+				var get = (Expr.Get) expr;
+				return new Expr.Set(get.object, get.name, value);
+			} else if (expr instanceof Expr.Index) {
+				var index = (Expr.Index) expr;
+				return new Expr.SetIndex(index.object, index.bracket, index.index, value);
+			} else {
+				this.error(equals, "Invalid assignment target");
+			}
+		}
+
+		return expr;
+	}
+
+	private Expr or() {
+		Expr expr = this.and();
+
+		while (this.match(TokenType.OR)) {
+			Token operator = this.previous();
+			Expr right = this.and();
+			expr = new Expr.Logical(expr, operator, right);
+		}
+
+		return expr;
+	}
+
+	private Expr and() {
+		Expr expr = this.equality();
+
+		while (this.match(TokenType.AND)) {
+			Token operator = this.previous();
+			Expr right = this.equality();
+			expr = new Expr.Logical(expr, operator, right);
+		}
+
+		return expr;
+	}
+
+	private Expr equality() {
+		Expr expr = this.comparison();
+
+		while (this.match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
+			Token operator = this.previous();
+			Expr right = this.comparison();
+			expr = new Expr.Binary(expr, operator, right);
+		}
+
+		return expr;
+	}
+
+	private Expr comparison() {
+		Expr expr = this.term();
+
+		while (this.match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
+			Token operator = this.previous();
+			Expr right = this.term();
+			expr = new Expr.Binary(expr, operator, right);
+		}
+
+		return expr;
+	}
+
+	private Expr term() {
+		Expr expr = this.factor();
+
+		while (this.match(TokenType.PLUS, TokenType.MINUS)) {
+			Token operator = this.previous();
+			Expr right = this.factor();
+			expr = new Expr.Binary(expr, operator, right);
+		}
+
+		return expr;
+	}
+
+	private Expr factor() {
+		Expr expr = this.unary();
+
+		while (this.match(TokenType.STAR, TokenType.SLASH, TokenType.PERCENT)) {
+			Token operator = this.previous();
+			Expr right = this.unary();
+			expr = new Expr.Binary(expr, operator, right);
+		}
+
+		return expr;
+	}
+
+	private Expr unary() {
+		if (this.match(TokenType.BANG, TokenType.MINUS)) {
+			Token operator = this.previous();
+			Expr right = this.unary();
+			return new Expr.Unary(operator, right);
+		}
+
+		return this.power();
+	}
+
+	private Expr power() {
+		Expr expr = this.call();
+
+		if (this.match(TokenType.STAR_STAR)) {
+			Token operator = this.previous();
+			Expr right = this.unary();
+			expr = new Expr.Binary(expr, operator, right);
+		}
+
+		return expr;
+	}
+
+	private Expr call() {
+		Expr expr = this.primary();
+
+		while (true) {
+			if (this.match(TokenType.LEFT_PAREN)) {
+				expr = this.finishCall(expr);
+			} else if (this.match(TokenType.DOT)) {
+				var name = this.consume(TokenType.IDENTIFIER, "Expect property name after '.'.");
+				expr = new Expr.Get(expr, name);
+			} else if (this.match(TokenType.LEFT_BRACKET)) {
+				var index = this.expression();
+				var bracket = this.consume(TokenType.RIGHT_BRACKET, "Expect ']' after index.");
+				expr = new Expr.Index(expr, bracket, index);
+			} else {
+				break;
+			}
+		}
+
+		return expr;
+	}
+
+	private Expr finishCall(Expr callee) {
+		List<Expr> arguments = new ArrayList<>();
+		if (!this.check(TokenType.RIGHT_PAREN)) {
+			do {
+				if (arguments.size() >= 255)
+					this.error(this.peek(), "Can't have more than 255 arguments.");
+				arguments.add(this.expression());
+			} while (this.match(TokenType.COMMA));
+		}
+
+		Token paren = this.consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments");
+		return new Expr.Call(callee, paren, arguments);
+	}
+
+	private Expr primary() {
+		if (this.match(TokenType.TRUE))
+			return new Expr.Literal(true);
+		if (this.match(TokenType.FALSE))
+			return new Expr.Literal(false);
+		if (this.match(TokenType.NIL))
+			return new Expr.Literal(null);
+
+		if (this.match(TokenType.NUMBER, TokenType.STRING))
+			return new Expr.Literal(this.previous().literal);
+
+		if (this.match(TokenType.IDENTIFIER))
+			return new Expr.Variable(this.previous());
+
+		if (this.match(TokenType.THIS))
+			return new Expr.This(this.previous());
+
+		if (this.match(TokenType.SUPER)) {
+			var keyword = this.previous();
+			this.consume(TokenType.DOT, "Expect '.' after super");
+			var method = this.consume(TokenType.IDENTIFIER,
+					"Expect superclass method name");
+			return new Expr.Super(keyword, method);
+		}
+
+		if (this.match(TokenType.LEFT_PAREN)) {
+			Expr expr = this.expression();
+			this.consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+			return new Expr.Grouping(expr);
+		}
+
+		throw this.error(this.peek(), "Expect expression.");
+	}
+
+	private boolean match(TokenType... types) {
+		for (TokenType type : types) {
+			if (this.check(type)) {
+				this.advance();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Token consume(TokenType type, String message) {
+		if (this.check(type))
+			return this.advance();
+
+		throw this.error(this.peek(), message);
+	}
+
+	private boolean check(TokenType type) {
+		if (this.isAtEnd())
+			return false;
+		return this.peek().type == type;
+	}
+
+	// an identifier used as a keyword in one place, offset tokens ahead
+	private boolean checkWord(int offset, String word) {
+		if (this.current + offset >= this.tokens.size())
+			return false;
+		var token = this.tokens.get(this.current + offset);
+		return token.type == TokenType.IDENTIFIER && token.lexeme.equals(word);
+	}
+
+	private Token advance() {
+		if (!this.isAtEnd())
+			this.current++;
+		return this.previous();
+	}
+
+	private boolean isAtEnd() {
+		return this.peek().type == TokenType.EOF;
+	}
+
+	private Token peek() {
+		return this.tokens.get(this.current);
+	}
+
+	private Token previous() {
+		return this.tokens.get(this.current - 1);
+	}
+
+	private ParseError error(Token token, String message) {
+		Lox.error(token, message);
+		return new ParseError();
+	}
+
+	private void synchronize() {
+		this.advance();
+
+		while (!this.isAtEnd()) {
+			if (this.previous().type == TokenType.SEMICOLON)
+				return;
+
+			switch (this.peek().type) {
+			case CLASS:
+			case FUN:
+			case IMPORT:
+			case VAR:
+			case FOR:
+			case IF:
+			case WHILE:
+			case PRINT:
+			case RETURN:
+			case YIELD:
+				return;
+			default:
+				break;
+			}
+
+			this.advance();
+		}
+	}
+
+	private static class ParseError extends RuntimeException {
+	}
 }
\ No newline at end of file
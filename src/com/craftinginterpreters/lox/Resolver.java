@@ -1,13 +1,22 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	private final Interpreter interpreter;
-	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+	private final Stack<Map<String, Variable>> scopes = new Stack<>();
+	private final Stack<FunctionScope> functions = new Stack<>();
+	// global variables by name, including ones only used so far
+	private final Map<String, Variable> globals = new HashMap<>();
+	// functions that passed the purity check on their own body
+	private final List<FunctionScope> pureCandidates = new ArrayList<>();
 	private FunctionType currentFunction = FunctionType.NONE;
 	private ClassType currentClass = ClassType.NONE;
 
@@ -23,6 +32,53 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		NONE, CLASS, SUBCLASS
 	}
 
+	private static class Variable {
+		// null for this and super
+		final Token name;
+		boolean defined = false;
+		boolean read = false;
+		boolean captured = false;
+		boolean assigned = false;
+		// function and class names are captured before they have a value
+		boolean lateBound = false;
+		// the declaration, for a function name
+		Stmt.Function function = null;
+
+		Variable(Token name) {
+			this.name = name;
+		}
+
+		// a copy taken when the closure is made would go stale
+		boolean needsCell() {
+			return this.name != null && this.captured && (this.assigned || this.lateBound);
+		}
+	}
+
+	private static class FunctionScope {
+		// index of the function's outermost scope: its parameters, or for a
+		// method the class scope holding this and super
+		final int start;
+		// captured name -> distance from the environment the function is made in
+		final Map<String, Integer> upvalues = new LinkedHashMap<>();
+		// globals it or a function inside it uses
+		final Set<String> globals = new HashSet<>();
+		final Stmt.Function declaration;
+		// set by anything that could see or change state outside the call
+		boolean impure = false;
+		// variables from outside the function that it reads or calls
+		final List<Variable> uses = new ArrayList<>();
+		// the statements being resolved in the function, outermost first
+		final List<Stmt> open = new ArrayList<>();
+		boolean generator = false;
+		// return statements with a value, which a generator can't have
+		final List<Token> returnsValue = new ArrayList<>();
+
+		FunctionScope(int start, Stmt.Function declaration) {
+			this.start = start;
+			this.declaration = declaration;
+		}
+	}
+
 	@Override
 	public Void visitVarStmt(Stmt.Var stmt) {
 		this.declare(stmt.name);
@@ -34,12 +90,27 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
+		// nothing to put in a scope of its own: run in the enclosing one
+		if (!declaresNames(stmt)) {
+			this.interpreter.flatten(stmt);
+			this.resolve(stmt.statements);
+			return null;
+		}
+
 		this.beginScope();
 		this.resolve(stmt.statements);
 		this.endScope();
 		return null;
 	}
 
+	private static boolean declaresNames(Stmt.Block block) {
+		for (var stmt : block.statements) {
+			if (stmt instanceof Stmt.Var || stmt instanceof Stmt.Function || stmt instanceof Stmt.Class)
+				return true;
+		}
+		return false;
+	}
+
 	@Override
 	public Void visitIfStmt(Stmt.If stmt) {
 		this.resolve(stmt.condition);
@@ -53,12 +124,76 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	public Void visitWhileStmt(Stmt.While stmt) {
 		this.resolve(stmt.condition);
 		this.resolve(stmt.body);
+
+		// closures copy what they capture out of the frame, so the body scope
+		// can live in one frame for the whole loop. For a desugared for loop
+		// it is the first statement of a flattened block that also holds the
+		// increment.
+		var body = loopScope(stmt.body);
+		if (body != null)
+			this.interpreter.reuseFrame(stmt, body);
 		return null;
 	}
 
 	@Override
-	public Void visitFunctionStmt(Stmt.Function stmt) {
+	public Void visitCountedStmt(Stmt.Counted stmt) {
+		// a range is evaluated once, before the loop variable exists
+		if (stmt.condition == null) {
+			this.resolve(stmt.start);
+			this.resolve(stmt.end);
+			if (stmt.step != null)
+				this.resolve(stmt.step);
+		}
+
+		this.beginScope();
 		this.declare(stmt.name);
+		if (stmt.condition != null)
+			this.resolve(stmt.start);
+		this.define(stmt.name);
+		if (stmt.condition != null)
+			this.resolve(stmt.end);
+
+		this.resolve(stmt.body);
+		var body = loopScope(stmt.body);
+		if (body != null)
+			this.interpreter.reuseFrame(stmt, body);
+
+		var variable = this.scopes.peek().get(stmt.name.lexeme);
+		if (stmt.condition == null) {
+			if (variable.read || variable.assigned || variable.captured)
+				this.interpreter.storeCounter(stmt);
+		} else {
+			// the counter can't be kept aside if anything else may change it
+			// or hold on to it; run the loop as the while it stands for
+			if (variable.assigned || variable.captured)
+				this.interpreter.generalLoop(stmt);
+			else if (variable.read)
+				this.interpreter.storeCounter(stmt);
+			this.resolve(((Expr.Binary) stmt.condition).left);
+			this.resolve(stmt.increment);
+		}
+
+		this.endScope();
+		return null;
+	}
+
+	private static Stmt.Block loopScope(Stmt body) {
+		if (!(body instanceof Stmt.Block block))
+			return null;
+		if (declaresNames(block))
+			return block;
+		if (!block.statements.isEmpty() && block.statements.get(0) instanceof Stmt.Block first && declaresNames(first))
+			return first;
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		// a nested function could do anything with the enclosing one's state
+		this.impure();
+		var variable = this.declare(stmt.name);
+		variable.lateBound = true;
+		variable.function = stmt;
 		this.define(stmt.name);
 
 		this.resolveFunction(stmt, FunctionType.FUNCTION);
@@ -69,8 +204,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	public Void visitClassStmt(Stmt.Class stmt) {
 		var enclosingClass = this.currentClass;
 		this.currentClass = ClassType.CLASS;
+		this.impure();
 
-		this.declare(stmt.name);
+		this.declare(stmt.name).lateBound = true;
 		this.define(stmt.name);
 
 		if (stmt.super_ != null) {
@@ -79,25 +215,54 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			}
 			this.currentClass = ClassType.SUBCLASS;
 			this.resolve(stmt.super_);
-			beginScope();
-			this.scopes.peek().put("super", true);
 		}
 
+		// bound methods get this and super in one environment
 		this.beginScope();
-		this.scopes.peek().put("this", true);
+		this.defineImplicit("this");
+		if (stmt.super_ != null)
+			this.defineImplicit("super");
 
 		for (var method : stmt.methods) {
 			this.resolveFunction(method, FunctionType.METHOD);
 		}
 
 		this.endScope();
-		if (stmt.super_ != null)
-			this.endScope();
 
 		this.currentClass = enclosingClass;
 		return null;
 	}
 
+	@Override
+	public Void visitDataStmt(Stmt.Data stmt) {
+		this.impure();
+		this.declare(stmt.name);
+		this.define(stmt.name);
+		return null;
+	}
+
+	@Override
+	public Void visitEachStmt(Stmt.Each stmt) {
+		this.resolve(stmt.iterable);
+
+		this.beginScope();
+		this.declare(stmt.name);
+		this.define(stmt.name);
+		this.resolve(stmt.body);
+		var body = loopScope(stmt.body);
+		if (body != null)
+			this.interpreter.reuseFrame(stmt, body);
+		this.endScope();
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		this.declare(stmt.name);
+		this.define(stmt.name);
+		return null;
+	}
+
 	@Override
 	public Void visitExpressionStmt(Stmt.Expression stmt) {
 		this.resolve(stmt.expression);
@@ -106,6 +271,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitPrintStmt(Stmt.Print stmt) {
+		this.impure();
 		this.resolve(stmt.expression);
 		return null;
 	}
@@ -115,6 +281,31 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		if (this.currentFunction == FunctionType.NONE)
 			Lox.error(stmt.keyword, "Can't return from top level code.");
 
+		if (stmt.value != null) {
+			this.resolve(stmt.value);
+			if (!this.functions.isEmpty())
+				this.functions.peek().returnsValue.add(stmt.keyword);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitYieldStmt(Stmt.Yield stmt) {
+		if (this.currentFunction == FunctionType.NONE) {
+			Lox.error(stmt.keyword, "Can't yield from top level code.");
+		} else {
+			var function = this.functions.peek();
+			if (this.currentFunction == FunctionType.METHOD && function.declaration.name.lexeme.equals("init"))
+				Lox.error(stmt.keyword, "Can't yield from an initializer.");
+			function.generator = true;
+			// the generator steps through these itself, to stop in them
+			for (var open : function.open) {
+				this.interpreter.suspend(open);
+			}
+		}
+		this.impure();
+
 		if (stmt.value != null)
 			this.resolve(stmt.value);
 
@@ -123,18 +314,25 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitVariableExpr(Expr.Variable expr) {
-		if (!this.scopes.isEmpty() && Boolean.FALSE.equals(this.scopes.peek().get(expr.name.lexeme))) {
+		if (!this.scopes.isEmpty() && this.scopes.peek().containsKey(expr.name.lexeme)
+				&& !this.scopes.peek().get(expr.name.lexeme).defined) {
 			Lox.error(expr.name, "Can't read local variable in it's own initializer");
 		}
 
-		this.resolveLocal(expr, expr.name);
+		var variable = this.resolveLocal(expr, expr.name);
+		variable.read = true;
+		if (!this.functions.isEmpty() && !this.isOwn(expr.name.lexeme))
+			this.functions.peek().uses.add(variable);
 		return null;
 	}
 
 	@Override
 	public Void visitAssignExpr(Expr.Assign expr) {
 		this.resolve(expr.value);
-		this.resolveLocal(expr, expr.name);
+		if (!this.isOwn(expr.name.lexeme))
+			this.impure();
+		var variable = this.resolveLocal(expr, expr.name);
+		variable.assigned = true;
 		return null;
 	}
 
@@ -160,6 +358,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitCallExpr(Expr.Call expr) {
+		// only functions from outside can be vetted; a local could hold anything
+		if (!(expr.callee instanceof Expr.Variable callee) || this.isOwn(callee.name.lexeme))
+			this.impure();
 		this.resolve(expr.callee);
 
 		for (var arg : expr.arguments) {
@@ -177,7 +378,25 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitSetExpr(Expr.Set expr) {
-		this.define(expr.name);
+		this.impure();
+		this.resolve(expr.value);
+		this.resolve(expr.object);
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		this.resolve(expr.object);
+		this.resolve(expr.index);
+		return null;
+	}
+
+	@Override
+	public Void visitSetIndexExpr(Expr.SetIndex expr) {
+		this.impure();
+		this.resolve(expr.object);
+		this.resolve(expr.index);
+		this.resolve(expr.value);
 		return null;
 	}
 
@@ -186,6 +405,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		if (this.currentClass != ClassType.CLASS && this.currentClass != ClassType.SUBCLASS) {
 			Lox.error(expr.keyword, "Can't use 'this' outside a class");
 		}
+		this.impure();
 		this.resolveLocal(expr, expr.keyword);
 		return null;
 	}
@@ -195,8 +415,11 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		if (this.currentClass != ClassType.SUBCLASS) {
 			Lox.error(expr.keyword, "Can't use 'super' outside a class with superclass");
 		}
+		this.impure();
 
+		// super methods are bound to this, which sits next to super
 		this.resolveLocal(expr, expr.keyword);
+		this.resolveName("this");
 		return null;
 	}
 
@@ -211,6 +434,74 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	// slots are only made by the Inliner, after resolving
+	@Override
+	public Void visitSlotExpr(Expr.Slot expr) {
+		return null;
+	}
+
+	// Resolves a whole file, then marks the functions whose result depends
+	// only on their arguments for memoizing and inlines small ones. That
+	// needs every assignment in the file to be seen, so it isn't done for
+	// REPL lines.
+	void resolveProgram(List<Stmt> stmts) {
+		this.resolve(stmts);
+		new TypeChecker().check(stmts);
+
+		var pure = new HashSet<Stmt.Function>();
+		for (var candidate : this.pureCandidates) {
+			pure.add(candidate.declaration);
+		}
+		// drop functions that use impure ones until none do
+		for (var changed = true; changed;) {
+			changed = false;
+			for (var candidate : this.pureCandidates) {
+				if (!pure.contains(candidate.declaration))
+					continue;
+				for (var variable : candidate.uses) {
+					if (!isPure(variable, pure)) {
+						pure.remove(candidate.declaration);
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+
+		for (var function : pure) {
+			this.interpreter.memoize(function);
+		}
+
+		if (Inliner.enabled)
+			new Inliner(this.interpreter).inline(stmts);
+	}
+
+	// natives whose result depends only on their arguments
+	private static final Set<String> PURE_NATIVES = Set.of(
+		"toString", "toNumber", "vecSum", "vecMin", "vecMax", "vecDot"
+	);
+
+	// whether a variable from outside a function always holds the same pure
+	// function
+	private static boolean isPure(Variable variable, Set<Stmt.Function> pure) {
+		if (variable.assigned)
+			return false;
+		if (variable.function != null)
+			return pure.contains(variable.function);
+		// a global nothing declares is a native
+		return !variable.defined && variable.name != null && PURE_NATIVES.contains(variable.name.lexeme);
+	}
+
+	private void impure() {
+		if (!this.functions.isEmpty())
+			this.functions.peek().impure = true;
+	}
+
+	// whether a name is declared inside the function being resolved
+	private boolean isOwn(String name) {
+		return !this.functions.isEmpty() && this.indexOf(name) >= this.functions.peek().start;
+	}
+
 	void resolve(List<Stmt> stmts) {
 		for (var stmt : stmts) {
 			this.resolve(stmt);
@@ -218,7 +509,15 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	}
 
 	private void resolve(Stmt stmt) {
+		if (this.functions.isEmpty()) {
+			stmt.accept(this);
+			return;
+		}
+
+		var open = this.functions.peek().open;
+		open.add(stmt);
 		stmt.accept(this);
+		open.remove(open.size() - 1);
 	}
 
 	private void resolve(Expr expr) {
@@ -230,40 +529,113 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	}
 
 	private void endScope() {
-		this.scopes.pop();
+		for (var variable : this.scopes.pop().values()) {
+			if (variable.needsCell())
+				this.interpreter.cell(variable.name);
+		}
 	}
 
-	private void declare(Token name) {
-		if (this.scopes.isEmpty())
-			return;
+	// the scope's variable, or the global one
+	private Variable declare(Token name) {
+		if (this.scopes.isEmpty()) {
+			var global = this.global(name);
+			// declaring a global again changes what it holds
+			if (global.defined)
+				global.assigned = true;
+			global.defined = true;
+			return global;
+		}
 
+		var variable = new Variable(name);
 		var scope = this.scopes.peek();
 		if (scope.containsKey(name.lexeme))
 			Lox.error(name, "Already a variable with this name in this scope.");
 
-		scope.put(name.lexeme, false);
+		scope.put(name.lexeme, variable);
+		return variable;
 	}
 
 	private void define(Token name) {
 		if (this.scopes.isEmpty())
 			return;
 
-		var scope = this.scopes.peek();
-		scope.put(name.lexeme, true);
+		this.scopes.peek().get(name.lexeme).defined = true;
 	}
 
-	private void resolveLocal(Expr expr, Token name) {
-		for (var i = this.scopes.size() - 1; i >= 0; i--) {
-			if (this.scopes.get(i).containsKey(name.lexeme)) {
-				interpreter.resolve(expr, this.scopes.size() - 1 - i);
-				return;
+	private void defineImplicit(String name) {
+		var variable = new Variable(null);
+		variable.defined = true;
+		this.scopes.peek().put(name, variable);
+	}
+
+	private Variable global(Token name) {
+		return this.globals.computeIfAbsent(name.lexeme, key -> new Variable(name));
+	}
+
+	private Variable resolveLocal(Expr expr, Token name) {
+		var distance = this.resolveName(name.lexeme);
+		if (distance < 0) {
+			for (var function : this.functions) {
+				function.globals.add(name.lexeme);
 			}
+			return this.global(name);
+		}
+		interpreter.resolve(expr, distance);
+		return this.lookUp(name.lexeme);
+	}
+
+	// distance from the current environment, or -1 for a global. A variable
+	// of a scope outside the current function is reached through the
+	// function's closure, which sits just past its outermost scope.
+	private int resolveName(String name) {
+		var i = this.indexOf(name);
+		if (i < 0)
+			return -1;
+		if (this.functions.isEmpty() || i >= this.functions.peek().start)
+			return this.scopes.size() - 1 - i;
+
+		this.capture(this.functions.size() - 1, i, name);
+		return this.scopes.size() - this.functions.peek().start;
+	}
+
+	// makes the function at index level (and every function between it and
+	// the variable) close over the variable in scope i
+	private void capture(int level, int i, String name) {
+		var function = this.functions.get(level);
+		if (function.upvalues.containsKey(name))
+			return;
+
+		this.scopes.get(i).get(name).captured = true;
+		// the function is made in the environment of the scope below its own
+		var site = function.start - 1;
+		if (level == 0 || i >= this.functions.get(level - 1).start) {
+			function.upvalues.put(name, site - i);
+		} else {
+			var enclosing = this.functions.get(level - 1);
+			this.capture(level - 1, i, name);
+			function.upvalues.put(name, site - enclosing.start + 1);
+		}
+	}
+
+	private int indexOf(String name) {
+		for (var i = this.scopes.size() - 1; i >= 0; i--) {
+			if (this.scopes.get(i).containsKey(name))
+				return i;
 		}
+		return -1;
+	}
+
+	private Variable lookUp(String name) {
+		return this.scopes.get(this.indexOf(name)).get(name);
 	}
 
 	private void resolveFunction(Stmt.Function function, FunctionType type) {
 		var enclosingFunction = this.currentFunction;
 		this.currentFunction = type;
+		// a method's closure sits past the class scope it is bound in
+		var start = type == FunctionType.METHOD ? this.scopes.size() - 1 : this.scopes.size();
+		var scope = new FunctionScope(start, function);
+		this.functions.push(scope);
 
 		this.beginScope();
 		for (var param : function.params) {
@@ -272,7 +644,22 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		}
 
 		this.resolve(function.body);
+
+		var cellParams = new boolean[function.params.size()];
+		for (var i = 0; i < cellParams.length; i++) {
+			cellParams[i] = this.scopes.peek().get(function.params.get(i).lexeme).needsCell();
+		}
 		this.endScope();
+		this.functions.pop();
+		this.interpreter.capture(function, new Captures(scope.upvalues, scope.globals, cellParams));
+		if (scope.generator) {
+			this.interpreter.generator(function);
+			for (var keyword : scope.returnsValue) {
+				Lox.error(keyword, "Can't return a value from a generator.");
+			}
+		}
+		if (type == FunctionType.FUNCTION && !scope.impure)
+			this.pureCandidates.add(scope);
 
 		this.currentFunction = enclosingFunction;
 	}
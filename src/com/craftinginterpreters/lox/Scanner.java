@@ -16,6 +16,7 @@ class Scanner {
 		keywords.put("for", TokenType.FOR);
 		keywords.put("fun", TokenType.FUN);
 		keywords.put("if", TokenType.IF);
+		keywords.put("import", TokenType.IMPORT);
 		keywords.put("nil", TokenType.NIL);
 		keywords.put("or", TokenType.OR);
 		keywords.put("print", TokenType.PRINT);
@@ -25,6 +26,7 @@ class Scanner {
 		keywords.put("true", TokenType.TRUE);
 		keywords.put("var", TokenType.VAR);
 		keywords.put("while", TokenType.WHILE);
+		keywords.put("yield", TokenType.YIELD);
 	}
 
 	private final String source;
@@ -62,11 +64,20 @@ class Scanner {
 		case '}':
 			this.addToken(TokenType.RIGHT_BRACE);
 			break;
+		case '[':
+			this.addToken(TokenType.LEFT_BRACKET);
+			break;
+		case ']':
+			this.addToken(TokenType.RIGHT_BRACKET);
+			break;
 		case ',':
 			this.addToken(TokenType.COMMA);
 			break;
+		case ':':
+			this.addToken(TokenType.COLON);
+			break;
 		case '.':
-			this.addToken(TokenType.DOT);
+			this.addToken(this.match('.') ? TokenType.DOT_DOT : TokenType.DOT);
 			break;
 		case '-':
 			this.addToken(TokenType.MINUS);
@@ -137,7 +148,7 @@ class Scanner {
 			break;
 
 		default:
-			if (this.isDigit(c)) {
+			if (isDigit(c)) {
 				this.number();
 			} else if (this.isAlpha(c)) {
 				this.identifier();
@@ -178,20 +189,19 @@ class Scanner {
 	}
 
 	private void number() {
-		while (this.isDigit(this.peek()))
+		while (isDigit(this.peek()))
 			this.advance();
 
 		// look for decimal part
-		if (this.peek() == '.' && this.isDigit(this.peekNext())) {
+		if (this.peek() == '.' && isDigit(this.peekNext())) {
 			// consume '.'
 			this.advance();
 
-			while (this.isDigit(this.peek()))
+			while (isDigit(this.peek()))
 				this.advance();
 		}
 
-		double value = Double.parseDouble(this.source.substring(this.start, this.current));
-		this.addToken(TokenType.NUMBER, value);
+		this.addToken(TokenType.NUMBER, Numbers.box(Numbers.parse(this.source, this.start, this.current)));
 	}
 
 	private void string(char quote) {
@@ -235,7 +245,7 @@ class Scanner {
 		return this.source.charAt(this.current + 1);
 	}
 
-	private boolean isDigit(char c) {
+	private static boolean isDigit(char c) {
 		return c >= '0' && c <= '9';
 	}
 
@@ -244,7 +254,7 @@ class Scanner {
 	}
 
 	private boolean isAlphaNumeric(char c) {
-		return this.isAlpha(c) || this.isDigit(c);
+		return this.isAlpha(c) || isDigit(c);
 	}
 
 	private boolean isAtEnd() {
@@ -264,7 +274,24 @@ class Scanner {
 		this.tokens.add(new Token(type, text, literal, this.line));
 	}
 
-	static Double toNumber(String string) {
+	static boolean isKeyword(String word) {
+		return keywords.containsKey(word);
+	}
+
+	static Object toNumber(String string) {
+		// the number at the start, as the scanner would read it
+		if (!string.isEmpty() && isDigit(string.charAt(0))) {
+			var end = 1;
+			while (end < string.length() && isDigit(string.charAt(end)))
+				end++;
+			if (end + 1 < string.length() && string.charAt(end) == '.' && isDigit(string.charAt(end + 1))) {
+				end += 2;
+				while (end < string.length() && isDigit(string.charAt(end)))
+					end++;
+			}
+			return Numbers.box(Numbers.parse(string, 0, end));
+		}
+
 		var scanner = new Scanner(string);
 		scanner.scanToken();
 
@@ -272,6 +299,6 @@ class Scanner {
 		if (token.type != TokenType.NUMBER)
 			return Double.NaN;
 
-		return (Double) token.literal;
+		return token.literal;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs many scripts at once for a multi-tenant host like the daemon,
+ * sharing a fixed number of cores among them fairly. Each script runs on a
+ * thread of its own but only while it holds one of the cores. It gives the
+ * core back at the end of every slice of its budget and queues for one
+ * again behind the scripts already waiting, and it holds none while its
+ * event loop waits for timers or I/O. A script stuck in a loop therefore
+ * delays the others by one slice at a time, and its budget stops it in the
+ * end.
+ *
+ * Scripts report compile errors to the reporter they are submitted with,
+ * and runtime errors to their interpreter's console.
+ */
+class ScriptScheduler implements AutoCloseable {
+	static class Task {
+		final Budget budget;
+		// what Lox.runFile returns: 0 when the script ran to the end, 65 on a
+		// compile error and 70 when it stopped on a runtime error or went
+		// over its budget; an IOException if the script couldn't be read
+		final CompletableFuture<Integer> status = new CompletableFuture<>();
+
+		private Task(Budget budget) {
+			this.budget = budget;
+		}
+
+		void cancel() {
+			this.budget.cancel();
+		}
+	}
+
+	private final Semaphore cores;
+	// platform threads, since a virtual thread spinning in a script never
+	// hands its carrier to the scripts that have yet to reach the queue
+	private final ExecutorService threads = Executors.newThreadPerTaskExecutor(
+			Thread.ofPlatform().name("jlox-script-", 0).daemon().factory());
+
+	ScriptScheduler(int cores) {
+		// fair, so a script giving up its core goes behind those waiting
+		this.cores = new Semaphore(cores, true);
+	}
+
+	Task submit(String path, Interpreter interpreter, Budget budget, Lox.Reporter reporter) {
+		var task = new Task(budget);
+		budget.between(() -> {
+			this.cores.release();
+			this.cores.acquireUninterruptibly();
+		});
+		budget.idle(this.cores::release, this.cores::acquireUninterruptibly);
+		this.threads.execute(() -> this.run(task, path, interpreter, reporter));
+		return task;
+	}
+
+	private void run(Task task, String path, Interpreter interpreter, Lox.Reporter reporter) {
+		Lox.reporter.set(reporter);
+		this.cores.acquireUninterruptibly();
+		try {
+			interpreter.limit(task.budget);
+			task.status.complete(Lox.runFile(path, interpreter));
+		} catch (Exception | StackOverflowError e) {
+			task.status.completeExceptionally(e);
+		} finally {
+			this.cores.release();
+		}
+	}
+
+	@Override
+	public void close() {
+		this.threads.close();
+	}
+}
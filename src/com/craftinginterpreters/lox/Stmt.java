@@ -10,9 +10,14 @@ abstract class Stmt {
 		R visitVarStmt(Var stmt);
 		R visitIfStmt(If stmt);
 		R visitWhileStmt(While stmt);
+		R visitCountedStmt(Counted stmt);
 		R visitFunctionStmt(Function stmt);
 		R visitReturnStmt(Return stmt);
 		R visitClassStmt(Class stmt);
+		R visitImportStmt(Import stmt);
+		R visitYieldStmt(Yield stmt);
+		R visitEachStmt(Each stmt);
+		R visitDataStmt(Data stmt);
 	}
 
 	abstract<R> R accept(Visitor<R> visitor);
@@ -58,10 +63,13 @@ abstract class Stmt {
 
 	static class Var extends Stmt {
 		final Token name;
+		final Token type;
 		final Expr initializer;
+		TypeChecker.Type guard;
 
-		Var(Token name, Expr initializer) {
+		Var(Token name, Token type, Expr initializer) {
 			this.name = name;
+			this.type = type;
 			this.initializer = initializer;
 		}
     
@@ -103,14 +111,50 @@ abstract class Stmt {
 		}
 	}
 
+	static class Counted extends Stmt {
+		final Token name;
+		final Token type;
+		final Expr start;
+		final Token operator;
+		final Expr end;
+		final Expr step;
+		final Stmt body;
+		final Expr condition;
+		final Expr increment;
+		TypeChecker.Type guard;
+
+		Counted(Token name, Token type, Expr start, Token operator, Expr end, Expr step, Stmt body, Expr condition, Expr increment) {
+			this.name = name;
+			this.type = type;
+			this.start = start;
+			this.operator = operator;
+			this.end = end;
+			this.step = step;
+			this.body = body;
+			this.condition = condition;
+			this.increment = increment;
+		}
+    
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitCountedStmt(this);
+		}
+	}
+
 	static class Function extends Stmt {
 		final Token name;
 		final List<Token> params;
+		final List<Token> types;
+		final Token returnType;
 		final List<Stmt> body;
+		TypeChecker.Type[] paramTypes;
+		TypeChecker.Type returns;
 
-		Function(Token name, List<Token> params, List<Stmt> body) {
+		Function(Token name, List<Token> params, List<Token> types, Token returnType, List<Stmt> body) {
 			this.name = name;
 			this.params = params;
+			this.types = types;
+			this.returnType = returnType;
 			this.body = body;
 		}
     
@@ -152,4 +196,70 @@ abstract class Stmt {
 		}
 	}
 
+	static class Import extends Stmt {
+		final Token keyword;
+		final Token path;
+		final Token name;
+
+		Import(Token keyword, Token path, Token name) {
+			this.keyword = keyword;
+			this.path = path;
+			this.name = name;
+		}
+    
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitImportStmt(this);
+		}
+	}
+
+	static class Yield extends Stmt {
+		final Token keyword;
+		final Expr value;
+
+		Yield(Token keyword, Expr value) {
+			this.keyword = keyword;
+			this.value = value;
+		}
+    
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitYieldStmt(this);
+		}
+	}
+
+	static class Each extends Stmt {
+		final Token name;
+		final Token keyword;
+		final Expr iterable;
+		final Stmt body;
+
+		Each(Token name, Token keyword, Expr iterable, Stmt body) {
+			this.name = name;
+			this.keyword = keyword;
+			this.iterable = iterable;
+			this.body = body;
+		}
+    
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitEachStmt(this);
+		}
+	}
+
+	static class Data extends Stmt {
+		final Token name;
+		final List<Token> fields;
+
+		Data(Token name, List<Token> fields) {
+			this.name = name;
+			this.fields = fields;
+		}
+    
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitDataStmt(this);
+		}
+	}
+
 }
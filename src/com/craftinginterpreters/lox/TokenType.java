@@ -2,16 +2,16 @@ package com.craftinginterpreters.lox;
 
 enum TokenType {
 	// Single-character tokens.
-	LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE, COMMA, DOT, MINUS, PLUS, SEMICOLON, SLASH, PERCENT,
+	LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE, LEFT_BRACKET, RIGHT_BRACKET, COMMA, COLON, DOT, MINUS, PLUS, SEMICOLON, SLASH, PERCENT,
 
 	// One or two character tokens.
-	STAR, STAR_STAR, BANG, BANG_EQUAL, EQUAL, EQUAL_EQUAL, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL,
+	DOT_DOT, STAR, STAR_STAR, BANG, BANG_EQUAL, EQUAL, EQUAL_EQUAL, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL,
 
 	// Literals.
 	IDENTIFIER, STRING, NUMBER,
 
 	// Keywords.
-	AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR, PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
+	AND, CLASS, ELSE, FALSE, FUN, FOR, IF, IMPORT, NIL, OR, PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE, YIELD,
 
 	EOF
 }
\ No newline at end of file
@@ -0,0 +1,448 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Checks the optional type annotations on variables, parameters and returns
+// (var x: num, fun f(a: num): str) once the resolver is done. Unannotated
+// code is left alone. An annotated variable only ever holds its type: a
+// value that can't be of it is a compile error, and one that may not be is
+// guarded when it is stored. Parameters and returns are guarded on every
+// call, since callers aren't checked. The interpreter then trusts what this
+// proves: arithmetic and comparisons on numbers known to be numbers are
+// marked on the node and run unboxed, without checking their operands or
+// boxing the results in between, and a function whose every return is
+// proven doesn't check what it returns.
+//
+// Only locals are trusted to hold their type when read. A global's
+// annotation is checked on assignment too, but code in other files or later
+// REPL lines can't be seen from here. The REPL checks each line with the
+// same checker, so a global annotated on one line is guarded on the next.
+class TypeChecker implements Expr.Visitor<TypeChecker.Type>, Stmt.Visitor<Void> {
+	enum Type {
+		NUM("num", Number.class),
+		STR("str", String.class),
+		BOOL("bool", Boolean.class);
+
+		final String name;
+		// final classes, so comparing classes is enough, but for numbers,
+		// which are Integers or Doubles (see Numbers)
+		private final Class<?> values;
+
+		Type(String name, Class<?> values) {
+			this.name = name;
+			this.values = values;
+		}
+
+		boolean accepts(Object value) {
+			if (this == NUM)
+				return Numbers.isNumber(value);
+			return value != null && value.getClass() == this.values;
+		}
+
+		// the value checked against the annotation on where
+		void guard(Token where, String message, Object value) {
+			if (!this.accepts(value))
+				throw new RuntimeError(where, message + " " + this.name + ".");
+		}
+
+		static Type of(Object value) {
+			if (Numbers.isNumber(value))
+				return NUM;
+			if (value instanceof String)
+				return STR;
+			if (value instanceof Boolean)
+				return BOOL;
+			return null;
+		}
+	}
+
+	// declared types by name, innermost scope first; null for a name that
+	// isn't annotated, which still hides an annotated one further out
+	private final Deque<Map<String, Type>> scopes = new ArrayDeque<>();
+	private final Map<String, Type> globals = new HashMap<>();
+	private Stmt.Function function = null;
+	private Type returns = null;
+	// whether a return in the current function wasn't proven to be of its type
+	private boolean unproven = false;
+
+	void check(List<Stmt> statements) {
+		// globals may be assigned in functions declared before them
+		this.check(statements, annotations(statements));
+	}
+
+	// statements that are part of a bigger program, like a unit of a
+	// LoxDocument, whose annotated globals are given
+	void check(List<Stmt> statements, Map<String, Type> annotations) {
+		this.globals.putAll(annotations);
+		this.check(statements, false);
+	}
+
+	// the annotated globals declared by statements
+	static Map<String, Type> annotations(List<Stmt> statements) {
+		var annotations = new HashMap<String, Type>();
+		for (var statement : statements) {
+			if (statement instanceof Stmt.Var var && var.type != null)
+				annotations.put(var.name.lexeme, named(var.type.lexeme));
+		}
+		return annotations;
+	}
+
+	private void check(List<Stmt> statements, boolean scoped) {
+		if (scoped)
+			this.scopes.push(new HashMap<>());
+		for (var statement : statements) {
+			if (statement != null)
+				statement.accept(this);
+		}
+		if (scoped)
+			this.scopes.pop();
+	}
+
+	private void check(Stmt statement) {
+		statement.accept(this);
+	}
+
+	private Type check(Expr expr) {
+		return expr.accept(this);
+	}
+
+	private Type type(Token annotation) {
+		if (annotation == null)
+			return null;
+		var type = named(annotation.lexeme);
+		if (type == null)
+			Lox.error(annotation, "Unknown type '" + annotation.lexeme + "'.");
+		return type;
+	}
+
+	private static Type named(String name) {
+		for (var type : Type.values()) {
+			if (type.name.equals(name))
+				return type;
+		}
+		return null;
+	}
+
+	private void declare(Token name, Type type) {
+		if (this.scopes.isEmpty())
+			this.globals.put(name.lexeme, type);
+		else
+			this.scopes.peek().put(name.lexeme, type);
+	}
+
+	// the declared type of the variable a name means here
+	private Type declared(String name, boolean read) {
+		for (var scope : this.scopes) {
+			if (scope.containsKey(name))
+				return scope.get(name);
+		}
+		return read ? null : this.globals.get(name);
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		this.check(stmt.statements, true);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		this.check(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		this.check(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		var type = this.type(stmt.type);
+		var value = stmt.initializer == null ? null : this.check(stmt.initializer);
+		if (type != null) {
+			if (stmt.initializer == null || value != null && value != type)
+				Lox.error(stmt.name, "Variable '" + stmt.name.lexeme + "' must hold a " + type.name + ".");
+			else if (value == null)
+				stmt.guard = type;
+		}
+		this.declare(stmt.name, type);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		this.check(stmt.condition);
+		this.check(stmt.thenBranch);
+		if (stmt.elseBranch != null)
+			this.check(stmt.elseBranch);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		this.check(stmt.condition);
+		this.check(stmt.body);
+		return null;
+	}
+
+	@Override
+	public Void visitCountedStmt(Stmt.Counted stmt) {
+		if (stmt.condition == null) {
+			this.check(stmt.start);
+			this.check(stmt.end);
+			if (stmt.step != null)
+				this.check(stmt.step);
+		}
+
+		this.scopes.push(new HashMap<>());
+		if (stmt.condition != null) {
+			// the counter of a for loop holds its type like any variable
+			var type = this.type(stmt.type);
+			var start = this.check(stmt.start);
+			if (type != null) {
+				if (start != null && start != type)
+					Lox.error(stmt.name, "Variable '" + stmt.name.lexeme + "' must hold a " + type.name + ".");
+				else if (start == null)
+					stmt.guard = type;
+			}
+			this.declare(stmt.name, type);
+			this.check(stmt.condition);
+			this.check(stmt.increment);
+		} else {
+			this.declare(stmt.name, null);
+		}
+		this.check(stmt.body);
+		this.scopes.pop();
+		return null;
+	}
+
+	@Override
+	public Void visitEachStmt(Stmt.Each stmt) {
+		this.check(stmt.iterable);
+		this.scopes.push(new HashMap<>());
+		this.declare(stmt.name, null);
+		this.check(stmt.body);
+		this.scopes.pop();
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		this.declare(stmt.name, null);
+		this.function(stmt);
+		return null;
+	}
+
+	private void function(Stmt.Function stmt) {
+		var paramTypes = new Type[stmt.params.size()];
+		var annotated = false;
+		for (var i = 0; i < paramTypes.length; i++) {
+			paramTypes[i] = this.type(stmt.types.get(i));
+			annotated |= paramTypes[i] != null;
+		}
+		if (annotated)
+			stmt.paramTypes = paramTypes;
+		var returns = this.type(stmt.returnType);
+
+		var enclosing = this.function;
+		var enclosingReturns = this.returns;
+		var enclosingUnproven = this.unproven;
+		this.function = stmt;
+		this.returns = returns;
+		this.unproven = false;
+		this.scopes.push(new HashMap<>());
+		for (var i = 0; i < paramTypes.length; i++) {
+			this.declare(stmt.params.get(i), paramTypes[i]);
+		}
+		this.check(stmt.body, false);
+		this.scopes.pop();
+		// the end of the body returns nil, so it must not be reached
+		if (returns != null && (this.unproven || !returns(stmt.body)))
+			stmt.returns = returns;
+		this.function = enclosing;
+		this.returns = enclosingReturns;
+		this.unproven = enclosingUnproven;
+	}
+
+	// whether running the statements always ends in a return
+	private static boolean returns(List<Stmt> statements) {
+		return !statements.isEmpty() && returns(statements.get(statements.size() - 1));
+	}
+
+	private static boolean returns(Stmt statement) {
+		if (statement instanceof Stmt.Return)
+			return true;
+		if (statement instanceof Stmt.Block block)
+			return returns(block.statements);
+		if (statement instanceof Stmt.If branch)
+			return branch.elseBranch != null && returns(branch.thenBranch) && returns(branch.elseBranch);
+		return false;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		var value = stmt.value == null ? null : this.check(stmt.value);
+		if (this.returns == null)
+			return null;
+		if (stmt.value == null || value != null && value != this.returns)
+			Lox.error(stmt.keyword, "Function '" + this.function.name.lexeme + "' must return a " + this.returns.name + ".");
+		else if (value == null)
+			this.unproven = true;
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		this.declare(stmt.name, null);
+		if (stmt.super_ != null)
+			this.check(stmt.super_);
+		for (var method : stmt.methods) {
+			if (method.name.lexeme.equals("init") && method.returnType != null)
+				Lox.error(method.returnType, "Can't annotate the return type of an initializer.");
+			this.function(method);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		this.declare(stmt.name, null);
+		return null;
+	}
+
+	@Override
+	public Void visitYieldStmt(Stmt.Yield stmt) {
+		if (stmt.value != null)
+			this.check(stmt.value);
+		return null;
+	}
+
+	@Override
+	public Void visitDataStmt(Stmt.Data stmt) {
+		this.declare(stmt.name, null);
+		return null;
+	}
+
+	@Override
+	public Type visitBinaryExpr(Expr.Binary expr) {
+		var left = this.check(expr.left);
+		var right = this.check(expr.right);
+		var numbers = left == Type.NUM && right == Type.NUM;
+
+		return switch (expr.operator.type) {
+			case PLUS, MINUS, SLASH, STAR, STAR_STAR, PERCENT -> {
+				expr.numeric = numbers;
+				if (numbers)
+					yield Type.NUM;
+				yield expr.operator.type == TokenType.PLUS && left == Type.STR && right == Type.STR ? Type.STR : null;
+			}
+			case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> {
+				expr.numeric = numbers;
+				yield Type.BOOL;
+			}
+			default -> Type.BOOL;
+		};
+	}
+
+	@Override
+	public Type visitLogicalExpr(Expr.Logical expr) {
+		var left = this.check(expr.left);
+		var right = this.check(expr.right);
+		return left == right ? left : null;
+	}
+
+	@Override
+	public Type visitGroupingExpr(Expr.Grouping expr) {
+		return this.check(expr.expression);
+	}
+
+	@Override
+	public Type visitLiteralExpr(Expr.Literal expr) {
+		return Type.of(expr.value);
+	}
+
+	@Override
+	public Type visitUnaryExpr(Expr.Unary expr) {
+		var right = this.check(expr.right);
+		if (expr.operator.type == TokenType.BANG)
+			return Type.BOOL;
+		expr.numeric = right == Type.NUM;
+		return expr.numeric ? Type.NUM : null;
+	}
+
+	@Override
+	public Type visitVariableExpr(Expr.Variable expr) {
+		return this.declared(expr.name.lexeme, true);
+	}
+
+	@Override
+	public Type visitAssignExpr(Expr.Assign expr) {
+		var value = this.check(expr.value);
+		var type = this.declared(expr.name.lexeme, false);
+		if (type == null)
+			return value;
+		if (value != null && value != type)
+			Lox.error(expr.name, "Variable '" + expr.name.lexeme + "' must hold a " + type.name + ".");
+		else if (value == null)
+			expr.guard = type;
+		return type;
+	}
+
+	@Override
+	public Type visitCallExpr(Expr.Call expr) {
+		this.check(expr.callee);
+		for (var argument : expr.arguments) {
+			this.check(argument);
+		}
+		return null;
+	}
+
+	@Override
+	public Type visitGetExpr(Expr.Get expr) {
+		this.check(expr.object);
+		return null;
+	}
+
+	@Override
+	public Type visitSetExpr(Expr.Set expr) {
+		this.check(expr.object);
+		this.check(expr.value);
+		return null;
+	}
+
+	@Override
+	public Type visitIndexExpr(Expr.Index expr) {
+		this.check(expr.object);
+		this.check(expr.index);
+		return null;
+	}
+
+	@Override
+	public Type visitSetIndexExpr(Expr.SetIndex expr) {
+		this.check(expr.object);
+		this.check(expr.index);
+		this.check(expr.value);
+		return null;
+	}
+
+	@Override
+	public Type visitThisExpr(Expr.This expr) {
+		return null;
+	}
+
+	@Override
+	public Type visitSuperExpr(Expr.Super expr) {
+		return null;
+	}
+
+	@Override
+	public Type visitSlotExpr(Expr.Slot expr) {
+		return null;
+	}
+}
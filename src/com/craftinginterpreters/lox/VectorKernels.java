@@ -0,0 +1,130 @@
+package com.craftinginterpreters.lox;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+class VectorKernels implements Float64Kernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void add(double[] a, double[] b, double[] out) {
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			var va = DoubleVector.fromArray(SPECIES, a, i);
+			var vb = DoubleVector.fromArray(SPECIES, b, i);
+			va.add(vb).intoArray(out, i);
+		}
+		for (; i < a.length; i++) {
+			out[i] = a[i] + b[i];
+		}
+	}
+
+	@Override
+	public void sub(double[] a, double[] b, double[] out) {
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			var va = DoubleVector.fromArray(SPECIES, a, i);
+			var vb = DoubleVector.fromArray(SPECIES, b, i);
+			va.sub(vb).intoArray(out, i);
+		}
+		for (; i < a.length; i++) {
+			out[i] = a[i] - b[i];
+		}
+	}
+
+	@Override
+	public void mul(double[] a, double[] b, double[] out) {
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			var va = DoubleVector.fromArray(SPECIES, a, i);
+			var vb = DoubleVector.fromArray(SPECIES, b, i);
+			va.mul(vb).intoArray(out, i);
+		}
+		for (; i < a.length; i++) {
+			out[i] = a[i] * b[i];
+		}
+	}
+
+	@Override
+	public void div(double[] a, double[] b, double[] out) {
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			var va = DoubleVector.fromArray(SPECIES, a, i);
+			var vb = DoubleVector.fromArray(SPECIES, b, i);
+			va.div(vb).intoArray(out, i);
+		}
+		for (; i < a.length; i++) {
+			out[i] = a[i] / b[i];
+		}
+	}
+
+	@Override
+	public void scale(double[] a, double factor, double[] out) {
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i).mul(factor).intoArray(out, i);
+		}
+		for (; i < a.length; i++) {
+			out[i] = a[i] * factor;
+		}
+	}
+
+	@Override
+	public double dot(double[] a, double[] b) {
+		var sums = DoubleVector.zero(SPECIES);
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			var va = DoubleVector.fromArray(SPECIES, a, i);
+			var vb = DoubleVector.fromArray(SPECIES, b, i);
+			sums = va.fma(vb, sums);
+		}
+		var sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(double[] a) {
+		var sums = DoubleVector.zero(SPECIES);
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			sums = sums.add(DoubleVector.fromArray(SPECIES, a, i));
+		}
+		var sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < a.length; i++) {
+			sum += a[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double min(double[] a) {
+		var mins = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			mins = mins.min(DoubleVector.fromArray(SPECIES, a, i));
+		}
+		var min = mins.reduceLanes(VectorOperators.MIN);
+		for (; i < a.length; i++) {
+			min = Math.min(min, a[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public double max(double[] a) {
+		var maxes = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+		var i = 0;
+		for (var bound = SPECIES.loopBound(a.length); i < bound; i += SPECIES.length()) {
+			maxes = maxes.max(DoubleVector.fromArray(SPECIES, a, i));
+		}
+		var max = maxes.reduceLanes(VectorOperators.MAX);
+		for (; i < a.length; i++) {
+			max = Math.max(max, a[i]);
+		}
+		return max;
+	}
+}